@@ -28,6 +28,7 @@
 package com.scrivenvar;
 
 import com.scrivenvar.service.Settings;
+import org.apache.commons.lang3.SystemUtils;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -99,6 +100,9 @@ public class Constants {
   public static final String STATUS_BAR_OK = "Main.statusbar.state.default";
   public static final String STATUS_PARSE_ERROR = "Main.statusbar.parse.error";
 
+  // Three parameters: time budget, offset, and slowest expressions
+  public static final String STATUS_R_TIMEOUT = "Main.statusbar.r.timeout";
+
   /**
    * Used when creating flat maps relating to resolved variables.
    */
@@ -120,6 +124,11 @@ public class Constants {
    */
   public static final Path DEFAULT_DIRECTORY = Paths.get( USER_DIRECTORY );
 
+  /**
+   * Where to persist data that can be regenerated, such as rasterized images.
+   */
+  public static final Path CACHE_DIRECTORY = getCacheDirectory();
+
   /**
    * Default starting delimiter when inserting R variables.
    */
@@ -141,6 +150,12 @@ public class Constants {
    */
   public static final String PARAGRAPH_ID_PREFIX = "p-";
 
+  /**
+   * Style class applied to words that are missing from the lexicon, which
+   * the editor's stylesheet underlines.
+   */
+  public static final String STYLE_MISSPELLED = "spelling";
+
   /**
    * Absolute location of true type font files within the Java archive file.
    */
@@ -150,4 +165,29 @@ public class Constants {
    * Default text editor font size, in points.
    */
   public static final int FONT_SIZE_EDITOR = 12;
+
+  /**
+   * Returns the platform-specific directory for application cache files.
+   *
+   * @return A directory that may not yet exist.
+   */
+  private static Path getCacheDirectory() {
+    final var home = System.getProperty( "user.home" );
+    final String base;
+
+    if( SystemUtils.IS_OS_WINDOWS ) {
+      final var local = System.getenv( "LOCALAPPDATA" );
+      base = local == null ? Paths.get( home, "AppData", "Local" ).toString()
+                           : local;
+    }
+    else if( SystemUtils.IS_OS_MAC ) {
+      base = Paths.get( home, "Library", "Caches" ).toString();
+    }
+    else {
+      final var xdg = System.getenv( "XDG_CACHE_HOME" );
+      base = xdg == null ? Paths.get( home, ".cache" ).toString() : xdg;
+    }
+
+    return Paths.get( base, "scrivenvar" );
+  }
 }
@@ -26,6 +26,7 @@
 package com.scrivenvar;
 
 import com.scrivenvar.editors.EditorPane;
+import com.scrivenvar.editors.TextSnapshot;
 import com.scrivenvar.editors.markdown.MarkdownEditorPane;
 import com.scrivenvar.service.events.Notification;
 import com.scrivenvar.service.events.Notifier;
@@ -408,12 +409,13 @@ public final class FileEditorTab extends Tab {
   }
 
   /**
-   * Forwards to the editor pane's listeners for text change events.
+   * Forwards to the editor pane's listeners for text revision events.
    *
    * @param listener The listener to notify when the text changes.
    */
-  public void addTextChangeListener( final ChangeListener<String> listener ) {
-    getEditorPane().addTextChangeListener( listener );
+  public void addSnapshotListener(
+      final ChangeListener<? super TextSnapshot> listener ) {
+    getEditorPane().addSnapshotListener( listener );
   }
 
   /**
@@ -442,6 +444,15 @@ public final class FileEditorTab extends Tab {
     getEditorPane().getEditor().addEventFilter( eventType, eventFilter );
   }
 
+  /**
+   * Forwards the request to the editor pane.
+   *
+   * @return The current revision of the text to process.
+   */
+  public TextSnapshot getSnapshot() {
+    return getEditorPane().getSnapshot();
+  }
+
   /**
    * Forwards the request to the editor pane.
    *
@@ -31,27 +31,31 @@ import com.dlsc.preferencesfx.PreferencesFxEvent;
 import com.scrivenvar.definition.DefinitionFactory;
 import com.scrivenvar.definition.DefinitionPane;
 import com.scrivenvar.definition.DefinitionSource;
-import com.scrivenvar.definition.MapInterpolator;
+import com.scrivenvar.definition.DependencyInterpolator;
+import com.scrivenvar.definition.ResolvedMap;
+import com.scrivenvar.definition.TreeItemMapper;
 import com.scrivenvar.definition.yaml.YamlDefinitionSource;
 import com.scrivenvar.editors.EditorPane;
 import com.scrivenvar.editors.DefinitionNameInjector;
+import com.scrivenvar.editors.DocumentProofreader;
+import com.scrivenvar.editors.TextSnapshot;
 import com.scrivenvar.editors.markdown.MarkdownEditorPane;
 import com.scrivenvar.preferences.UserPreferences;
 import com.scrivenvar.preview.HTMLPreviewPane;
-import com.scrivenvar.processors.HtmlPreviewProcessor;
 import com.scrivenvar.processors.Processor;
 import com.scrivenvar.processors.ProcessorFactory;
+import com.scrivenvar.processors.markdown.MarkdownDocument;
 import com.scrivenvar.service.Options;
 import com.scrivenvar.service.Snitch;
 import com.scrivenvar.service.events.Notifier;
 import com.scrivenvar.spelling.api.SpellCheckListener;
 import com.scrivenvar.spelling.api.SpellChecker;
+import com.scrivenvar.spelling.impl.LexiconIndex;
 import com.scrivenvar.spelling.impl.PermissiveSpeller;
 import com.scrivenvar.spelling.impl.SymSpellSpeller;
 import com.scrivenvar.util.Action;
 import com.scrivenvar.util.ActionBuilder;
 import com.scrivenvar.util.ActionUtils;
-import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.NodeVisitor;
 import com.vladsch.flexmark.util.ast.VisitHandler;
 import javafx.beans.binding.Bindings;
@@ -87,24 +91,26 @@ import org.fxmisc.richtext.StyleClassedTextArea;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
 import org.reactfx.value.Val;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
 import static com.scrivenvar.Constants.*;
 import static com.scrivenvar.Messages.get;
 import static com.scrivenvar.util.StageState.*;
 import static de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon.*;
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static javafx.application.Platform.runLater;
 import static javafx.event.Event.fireEvent;
 import static javafx.scene.input.KeyCode.ENTER;
@@ -134,13 +140,63 @@ public class MainWindow implements Observer {
   private final Object mMutex = new Object();
 
   /**
-   * Prevents re-instantiation of processing classes.
+   * Milliseconds to wait for more text changes before rendering. Bursts of
+   * keystrokes that arrive within this window are coalesced into one render.
+   */
+  private static final long RENDER_DELAY = 40;
+
+  /**
+   * Runs the processing chains away from the JavaFX application thread so
+   * that typing latency does not depend on the document size. A single
+   * thread guarantees that renders are applied in the order requested.
+   */
+  private final ScheduledExecutorService mRenderer =
+      newSingleThreadScheduledExecutor( runnable -> {
+        final var thread = new Thread( runnable, "render" );
+        thread.setDaemon( true );
+        return thread;
+      } );
+
+  /**
+   * Incremented for every render request; a render whose revision no longer
+   * matches has been superseded and abandons its processing chain.
+   */
+  private final AtomicLong mRenderRevision = new AtomicLong();
+
+  /**
+   * The most recently scheduled render, only accessed on the JavaFX thread.
+   */
+  private ScheduledFuture<?> mRenderTask;
+
+  /**
+   * Identifies the tab, text revision, processor chain, and definitions
+   * version that were last rendered, only accessed on the render thread.
+   * Requests to render the same state again are ignored.
+   */
+  private List<Object> mRendered = List.of();
+
+  /**
+   * Prevents re-instantiation of processing classes. Processors are created
+   * and cleared on the JavaFX thread, then applied on the render thread.
    */
   private final Map<FileEditorTab, Processor<String>> mProcessors =
       new HashMap<>();
 
-  private final Map<String, String> mResolvedMap =
-      new HashMap<>( DEFAULT_MAP_SIZE );
+  /**
+   * Read by the render thread while being updated on the JavaFX thread.
+   */
+  private final ResolvedMap mResolvedMap = new ResolvedMap();
+
+  /**
+   * Interpolates definitions as they change, on the JavaFX thread.
+   */
+  private final DependencyInterpolator mInterpolator =
+      new DependencyInterpolator();
+
+  /**
+   * Translates definition tree modifications into definition changes.
+   */
+  private TreeItemMapper mTreeMapper;
 
   private final EventHandler<PreferencesFxEvent> mRPreferencesListener =
       event -> rerender();
@@ -151,8 +207,8 @@ public class MainWindow implements Observer {
   private final EventHandler<TreeItem.TreeModificationEvent<Event>>
       mTreeHandler = event -> {
     exportDefinitions( getDefinitionPath() );
-    interpolateResolvedMap();
-    rerender();
+    interpolateResolvedMap( event );
+    refresh();
   };
 
   /**
@@ -325,6 +381,15 @@ public class MainWindow implements Observer {
     );
   }
 
+  /**
+   * Re-renders the active tab using the existing processors, which read the
+   * definitions as they change and re-evaluate only the R expressions that
+   * depend on the changed definitions.
+   */
+  private void refresh() {
+    runLater( this::renderActiveTab );
+  }
+
   /**
    * When tabs are added, hook the various change listeners onto the new
    * tab sothat the preview pane refreshes as necessary.
@@ -357,7 +422,7 @@ public class MainWindow implements Observer {
   }
 
   private void initTextChangeListener( final FileEditorTab tab ) {
-    tab.addTextChangeListener(
+    tab.addSnapshotListener(
         ( editor, oldValue, newValue ) -> {
           process( tab );
           scrollToParagraph( getCurrentParagraphIndex() );
@@ -395,24 +460,30 @@ public class MainWindow implements Observer {
    * @param tab The tab to spellcheck.
    */
   private void initSpellCheckListener( final FileEditorTab tab ) {
-    final var editor = tab.getEditorPane().getEditor();
-
-    // When the editor first appears, run a full spell check. This allows
-    // spell checking while typing to be restricted to the active paragraph,
-    // which is usually substantially smaller than the whole document.
+    final var pane = tab.getEditorPane();
+    final var editor = pane.getEditor();
+    final var document = pane.getDocument();
+    final var proofreader =
+        new DocumentProofreader( getSpellChecker(), document );
+
+    // When the editor first appears, run a full spell check in the
+    // background. This allows spell checking while typing to be restricted
+    // to the active paragraph, which is usually substantially smaller than
+    // the whole document.
     addShowListener(
-        editor, ( __ ) -> spellcheck( editor, editor.getText() )
-    );
+        editor, ( __ ) -> proofreader.proofread( editor, pane.getSnapshot() ) );
+
+    // Snapshots are only taken for text additions or deletions, so
+    // notifications of style changes do not trigger proofreading.
+    pane.addSnapshotListener( ( c, o, snapshot ) -> {
+      final var offset = snapshot.getChangePosition();
 
-    // Use the plain text changes so that notifications of style changes
-    // are suppressed. Checking against the identity ensures that only
-    // new text additions or deletions trigger proofreading.
-    editor.plainTextChanges()
-          .filter( p -> !p.isIdentity() ).subscribe( change -> {
+      if( offset < 0 ) {
+        return;
+      }
 
       // Only perform a spell check on the current paragraph. The
       // entire document is processed once, when opened.
-      final var offset = change.getPosition();
       final var position = editor.offsetToPosition( offset, Forward );
       final var paraId = position.getMajor();
       final var paragraph = editor.getParagraph( paraId );
@@ -421,7 +492,7 @@ public class MainWindow implements Observer {
       // Ensure that styles aren't doubled-up.
       editor.clearStyle( paraId );
 
-      spellcheck( editor, text, paraId );
+      spellcheck( editor, document, text, paraId );
     } );
   }
 
@@ -528,6 +599,13 @@ public class MainWindow implements Observer {
    * Called whenever the preview pane becomes out of sync with the file editor
    * tab. This can be called when the text changes, the caret paragraph
    * changes, or the file tab changes.
+   * <p>
+   * A snapshot of the text and the tab's processing chain are captured on
+   * the JavaFX thread, then the text is processed on the render thread.
+   * Requests that arrive before a pending render starts replace that
+   * render; a render that is already running stops at the next link in its
+   * chain. Only the final document swap happens on the Swing thread.
+   * </p>
    *
    * @param tab The file editor tab that has been changed in some fashion.
    */
@@ -535,15 +613,39 @@ public class MainWindow implements Observer {
     if( tab != null ) {
       getPreviewPane().setPath( tab.getPath() );
 
-      final Processor<String> processor = getProcessors().computeIfAbsent(
-          tab, p -> createProcessors( tab )
-      );
+      final TextSnapshot snapshot = tab.getSnapshot();
+      final Processor<String> processor = getProcessors()
+          .computeIfAbsent( tab, this::createProcessors );
+      final long revision = mRenderRevision.incrementAndGet();
+      final BooleanSupplier superseded =
+          () -> revision != mRenderRevision.get();
 
-      try {
-        processChain( processor, tab.getEditorText() );
-      } catch( final Exception ex ) {
-        error( ex );
+      if( mRenderTask != null ) {
+        mRenderTask.cancel( false );
       }
+
+      mRenderTask = mRenderer.schedule( () -> {
+        try {
+          if( !superseded.getAsBoolean() ) {
+            final List<Object> rendered = List.of(
+                tab, snapshot.getRevision(), processor,
+                getResolvedMap().getVersion() );
+
+            if( !rendered.equals( mRendered ) ) {
+              // Forget the previous state in case the preview is changed
+              // before this render is superseded.
+              mRendered = List.of();
+              processChain( processor, snapshot.getText(), superseded );
+
+              if( !superseded.getAsBoolean() ) {
+                mRendered = rendered;
+              }
+            }
+          }
+        } catch( final Exception ex ) {
+          error( ex );
+        }
+      }, RENDER_DELAY, MILLISECONDS );
     }
   }
 
@@ -554,8 +656,30 @@ public class MainWindow implements Observer {
    * @param text    The initial value of the text to process.
    * @return The final value of the text that was processed by the chain.
    */
-  private String processChain( Processor<String> handler, String text ) {
+  private String processChain( final Processor<String> handler,
+                               final String text ) {
+    return processChain( handler, text, () -> false );
+  }
+
+  /**
+   * Executes the processing chain, operating on the given string, until
+   * the chain ends or the given condition reports that the result is no
+   * longer wanted.
+   *
+   * @param handler   The first processor in the chain to call.
+   * @param text      The initial value of the text to process.
+   * @param cancelled Answers {@code true} to abandon the remaining links.
+   * @return The final value of the text that was processed by the chain, or
+   * {@code null} if processing was abandoned.
+   */
+  private String processChain(
+      Processor<String> handler, String text,
+      final BooleanSupplier cancelled ) {
     while( handler != null && text != null ) {
+      if( cancelled.getAsBoolean() ) {
+        return null;
+      }
+
       text = handler.apply( text );
       handler = handler.next();
     }
@@ -618,12 +742,43 @@ public class MainWindow implements Observer {
   }
 
   private void interpolateResolvedMap() {
-    final Map<String, String> treeMap = getDefinitionPane().toMap();
-    final Map<String, String> map = new HashMap<>( treeMap );
-    MapInterpolator.interpolate( map );
+    final var root = getDefinitionPane().getTreeView().getRoot();
+    final var mapper = new TreeItemMapper( root );
+    final var interpolator = getInterpolator();
+
+    // Only changed definitions and their dependents are interpolated.
+    interpolator.update( mapper.getDefinitions() );
+    getResolvedMap().update( interpolator.getResolved() );
+    setTreeMapper( mapper );
+
+    reportCycles();
+  }
+
+  /**
+   * Applies a single definition tree modification to the resolved map,
+   * without walking the entire tree.
+   *
+   * @param event The modification made to the definition tree.
+   */
+  private void interpolateResolvedMap(
+      final TreeItem.TreeModificationEvent<?> event ) {
+    final var changes = getTreeMapper().apply( event );
+    final var interpolator = getInterpolator();
+    final var changed = interpolator.apply( changes );
+
+    getResolvedMap().update( interpolator.getResolved(), changed );
 
-    getResolvedMap().clear();
-    getResolvedMap().putAll( map );
+    reportCycles();
+  }
+
+  private void reportCycles() {
+    final var cycles = getInterpolator().getCycles();
+
+    if( !cycles.isEmpty() ) {
+      final var key = cycles.iterator().next();
+      final var value = getTreeMapper().getDefinitions().get( key );
+      error( get( "yaml.error.unresolvable", key, value ) );
+    }
   }
 
   private void initDefinitionPane() {
@@ -753,18 +908,24 @@ public class MainWindow implements Observer {
    */
   private void copyHtml() {
     final var markdown = getActiveEditorPane().getText();
-    final var processors = createProcessorFactory().createProcessors(
-        getActiveFileEditorTab()
-    );
-
-    final var chain = processors.remove( HtmlPreviewProcessor.class );
+    final var tab = getActiveFileEditorTab();
+    final var chain = createProcessorFactory().createExportProcessors( tab );
 
-    final String html = processChain( chain, markdown );
+    // Processors (such as R) must not be run concurrently with a render.
+    mRenderer.execute( () -> {
+      try {
+        final String html = processChain( chain, markdown );
 
-    final Clipboard clipboard = Clipboard.getSystemClipboard();
-    final ClipboardContent content = new ClipboardContent();
-    content.putString( html );
-    clipboard.setContent( content );
+        runLater( () -> {
+          final Clipboard clipboard = Clipboard.getSystemClipboard();
+          final ClipboardContent content = new ClipboardContent();
+          content.putString( html );
+          clipboard.setContent( content );
+        } );
+      } catch( final Exception ex ) {
+        error( ex );
+      }
+    } );
   }
 
   /**
@@ -826,7 +987,7 @@ public class MainWindow implements Observer {
 
   private SpellChecker createSpellChecker() {
     try {
-      final Collection<String> lexicon = readLexicon( "en.txt" );
+      final LexiconIndex lexicon = readLexicon( "en.txt" );
       return SymSpellSpeller.forLexicon( lexicon );
     } catch( final Exception ex ) {
       error( ex );
@@ -1389,10 +1550,22 @@ public class MainWindow implements Observer {
    *
    * @return A map to help dereference variables.
    */
-  private Map<String, String> getResolvedMap() {
+  private ResolvedMap getResolvedMap() {
     return mResolvedMap;
   }
 
+  private DependencyInterpolator getInterpolator() {
+    return mInterpolator;
+  }
+
+  private TreeItemMapper getTreeMapper() {
+    return mTreeMapper;
+  }
+
+  private void setTreeMapper( final TreeItemMapper mapper ) {
+    mTreeMapper = mapper;
+  }
+
   private Notifier getNotifier() {
     return sNotifier;
   }
@@ -1410,25 +1583,16 @@ public class MainWindow implements Observer {
   //---- Spelling -----------------------------------------------------------
 
   /**
-   * Delegates to {@link #spellcheck(StyleClassedTextArea, String, int)}.
-   * This is called to spell check the document, rather than a single paragraph.
+   * Spellchecks a single paragraph of the document. The entire document is
+   * proofread by a {@link DocumentProofreader}.
    *
-   * @param text The full document text.
+   * @param document Parses the text to find the words to check.
+   * @param text     Look up words for this text in the lexicon.
+   * @param paraId   Index of the paragraph that receives the style spans.
    */
   private void spellcheck(
-      final StyleClassedTextArea editor, final String text ) {
-    spellcheck( editor, text, -1 );
-  }
-
-  /**
-   * Spellchecks a subset of the entire document.
-   *
-   * @param text   Look up words for this text in the lexicon.
-   * @param paraId Set to -1 to apply resulting style spans to the entire
-   *               text.
-   */
-  private void spellcheck(
-      final StyleClassedTextArea editor, final String text, final int paraId ) {
+      final StyleClassedTextArea editor, final MarkdownDocument document,
+      final String text, final int paraId ) {
     final var builder = new StyleSpansBuilder<Collection<String>>();
     final var runningIndex = new AtomicInteger( 0 );
     final var checker = getSpellChecker();
@@ -1438,7 +1602,7 @@ public class MainWindow implements Observer {
     // This allows Markdown, R Markdown, XML, and R XML documents to return
     // sets of words to check.
 
-    final var node = mParser.parse( text );
+    final var node = document.toNode( text );
     final var visitor = new TextVisitor( ( visited, bIndex, eIndex ) -> {
       // Treat hyphenated compound words as individual words.
       final var check = visited.replace( '-', ' ' );
@@ -1449,7 +1613,7 @@ public class MainWindow implements Observer {
 
         // Clear styling between lexiconically absent words.
         builder.add( emptyList(), prevIndex - runningIndex.get() );
-        builder.add( singleton( "spelling" ), currIndex - prevIndex );
+        builder.add( singleton( STYLE_MISSPELLED ), currIndex - prevIndex );
         runningIndex.set( currIndex );
       } );
     } );
@@ -1461,36 +1625,33 @@ public class MainWindow implements Observer {
       // Clear styling after the last lexiconically absent word.
       builder.add( emptyList(), text.length() - runningIndex.get() );
 
-      final var spans = builder.create();
-
-      if( paraId >= 0 ) {
-        editor.setStyleSpans( paraId, 0, spans );
-      }
-      else {
-        editor.setStyleSpans( 0, spans );
-      }
+      editor.setStyleSpans( paraId, 0, builder.create() );
     }
   }
 
+  /**
+   * Opens the binary index for the given lexicon, which is created from the
+   * lexicon the first time the lexicon is read.
+   *
+   * @param filename The lexicon's file name, without a directory.
+   * @return The words that are spelled correctly.
+   * @throws Exception The lexicon could not be read.
+   */
   @SuppressWarnings("SameParameterValue")
-  private Collection<String> readLexicon( final String filename )
+  private LexiconIndex readLexicon( final String filename )
       throws Exception {
     final var path = Paths.get( LEXICONS_DIRECTORY, filename ).toString();
     final var classLoader = MainWindow.class.getClassLoader();
+    final var resource = classLoader.getResource( path );
+    final var index = CACHE_DIRECTORY
+        .resolve( LEXICONS_DIRECTORY )
+        .resolve( filename + ".idx" );
 
-    try( final var resource = classLoader.getResourceAsStream( path ) ) {
-      assert resource != null;
+    assert resource != null;
 
-      return new BufferedReader( new InputStreamReader( resource, UTF_8 ) )
-          .lines()
-          .collect( Collectors.toList() );
-    }
+    return LexiconIndex.open( resource, index );
   }
 
-  // TODO: Replace using Markdown processor instantiated for Markdown files.
-  // FIXME: https://github.com/DaveJarvis/scrivenvar/issues/59
-  private final Parser mParser = Parser.builder().build();
-
   // TODO: Replace with generic interface; provide Markdown/XML implementations.
   // FIXME: https://github.com/DaveJarvis/scrivenvar/issues/59
   private final static class TextVisitor {
@@ -32,6 +32,8 @@ import javafx.scene.control.TreeItem;
 import java.util.Stack;
 import java.util.function.BiFunction;
 
+import static com.scrivenvar.definition.TreeItemAdapter.SEPARATOR;
+import static com.scrivenvar.sigils.YamlSigilOperator.entoken;
 import static java.text.Normalizer.Form.NFD;
 import static java.text.Normalizer.normalize;
 
@@ -42,6 +44,12 @@ import static java.text.Normalizer.normalize;
  */
 public class DefinitionTreeItem<T> extends TreeItem<T> {
 
+  /**
+   * Dotted path to this node, computed on demand; {@code null} when stale.
+   * Whenever a node's path is cached, so is its parent's path.
+   */
+  private String mPath;
+
   /**
    * Constructs a new item with a default value.
    *
@@ -49,6 +57,9 @@ public class DefinitionTreeItem<T> extends TreeItem<T> {
    */
   public DefinitionTreeItem( final T value ) {
     super( value );
+
+    valueProperty().addListener( ( c, o, n ) -> invalidatePath() );
+    parentProperty().addListener( ( c, o, n ) -> invalidatePath() );
   }
 
   /**
@@ -193,6 +204,65 @@ public class DefinitionTreeItem<T> extends TreeItem<T> {
    * @return A non-null string, possibly empty.
    */
   public String toPath() {
-    return TreeItemAdapter.toPath( getParent() );
+    final var parent = getParent();
+
+    return parent instanceof DefinitionTreeItem
+        ? entoken( ((DefinitionTreeItem<T>) parent).getPath() )
+        : TreeItemAdapter.toPath( parent );
+  }
+
+  /**
+   * Returns the dotted path to this node, without sigils. The path is cached
+   * until this node, or one of its ancestors, is renamed or moved.
+   *
+   * @return A non-null string, empty for the root node.
+   */
+  String getPath() {
+    var path = mPath;
+
+    if( path == null ) {
+      final var parent = getParent();
+      final var segment = String.valueOf( getValue() );
+
+      if( this instanceof RootTreeItem ) {
+        path = "";
+      }
+      else if( parent == null || parent instanceof RootTreeItem ) {
+        path = segment;
+      }
+      else if( parent instanceof DefinitionTreeItem ) {
+        path = ((DefinitionTreeItem<T>) parent).getPath() + SEPARATOR + segment;
+      }
+      else {
+        final var key = TreeItemAdapter.toPath( parent );
+        path = key.substring( 1, key.length() - 1 ) + SEPARATOR + segment;
+      }
+
+      mPath = path;
+    }
+
+    return path;
+  }
+
+  /**
+   * Discards the cached paths for this node and all of its descendants.
+   */
+  void invalidatePath() {
+    final var stack = new Stack<TreeItem<T>>();
+    stack.push( this );
+
+    while( !stack.isEmpty() ) {
+      final var node = stack.pop();
+
+      // Descendants only cache paths when their ancestors do.
+      if( node instanceof DefinitionTreeItem ) {
+        final var item = (DefinitionTreeItem<T>) node;
+
+        if( item.mPath != null ) {
+          item.mPath = null;
+          node.getChildren().forEach( stack::push );
+        }
+      }
+    }
   }
 }
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.definition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.scrivenvar.Constants.DEFAULT_MAP_SIZE;
+
+/**
+ * Responsible for performing string interpolation on definitions whose values
+ * refer to other definitions using {@code $key$} syntax. References in each
+ * value are parsed once, forming a dependency graph. Values are resolved
+ * depth-first, with each resolved value remembered so that shared references
+ * are resolved only once. When a definition changes, only that definition and
+ * the definitions that depend on it are resolved again.
+ * <p>
+ * Definitions that refer to themselves, directly or indirectly, are reported
+ * as cycles; their unresolvable references are left verbatim. This class is
+ * not thread-safe.
+ * </p>
+ */
+public class DependencyInterpolator {
+
+  private static final char SIGIL = '$';
+
+  /**
+   * Uninterpolated definitions, keyed by name.
+   */
+  private final Map<String, String> mDefinitions =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Parsed values: literal text at even indexes, referenced keys at odd
+   * indexes.
+   */
+  private final Map<String, String[]> mTemplates =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Maps referenced keys to the keys whose values refer to them. Referenced
+   * keys need not be defined, so that defining them later updates the values
+   * that refer to them.
+   */
+  private final Map<String, Set<String>> mDependents =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Interpolated definitions, keyed by name.
+   */
+  private final Map<String, String> mResolved =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Keys whose values refer back to themselves, directly or indirectly.
+   */
+  private final Set<String> mCycles = new LinkedHashSet<>();
+
+  /**
+   * Keys being resolved, used to detect cycles.
+   */
+  private final List<String> mResolving = new ArrayList<>();
+
+  public DependencyInterpolator() {
+  }
+
+  /**
+   * Replaces all definitions with the given definitions, resolving only those
+   * values that differ from the previous definitions, or that depend on
+   * differing values.
+   *
+   * @param definitions The uninterpolated definitions.
+   * @return The keys whose interpolated values were added, changed, or
+   * removed.
+   */
+  public Set<String> update( final Map<String, String> definitions ) {
+    final Map<String, String> changes = new HashMap<>();
+
+    for( final var key : mDefinitions.keySet() ) {
+      if( !definitions.containsKey( key ) ) {
+        changes.put( key, null );
+      }
+    }
+
+    for( final var entry : definitions.entrySet() ) {
+      final var key = entry.getKey();
+      final var value = entry.getValue();
+
+      if( !value.equals( mDefinitions.get( key ) ) ) {
+        changes.put( key, value );
+      }
+    }
+
+    return apply( changes );
+  }
+
+  /**
+   * Adds, changes, and removes the given definitions, then resolves only the
+   * affected values.
+   *
+   * @param changes The uninterpolated definitions to change, which map to
+   *                {@code null} for definitions to remove.
+   * @return The keys whose interpolated values were added, changed, or
+   * removed.
+   */
+  public Set<String> apply( final Map<String, String> changes ) {
+    for( final var entry : changes.entrySet() ) {
+      final var key = entry.getKey();
+      final var value = entry.getValue();
+
+      if( value == null ) {
+        undefine( key );
+      }
+      else {
+        define( key, value );
+      }
+    }
+
+    return resolve( changes.keySet() );
+  }
+
+  /**
+   * Adds or changes a single definition.
+   *
+   * @param key   The definition name, including sigils.
+   * @param value The uninterpolated definition value.
+   * @return The keys whose interpolated values changed.
+   */
+  public Set<String> put( final String key, final String value ) {
+    define( key, value );
+    return resolve( Set.of( key ) );
+  }
+
+  /**
+   * Removes a single definition.
+   *
+   * @param key The definition name, including sigils.
+   * @return The keys whose interpolated values changed or were removed.
+   */
+  public Set<String> remove( final String key ) {
+    undefine( key );
+    return resolve( Set.of( key ) );
+  }
+
+  /**
+   * Returns the interpolated definitions.
+   *
+   * @return An unmodifiable view of the interpolated definitions.
+   */
+  public Map<String, String> getResolved() {
+    return Collections.unmodifiableMap( mResolved );
+  }
+
+  /**
+   * Returns the keys whose values refer back to themselves.
+   *
+   * @return An unmodifiable view of the keys that could not be resolved.
+   */
+  public Set<String> getCycles() {
+    return Collections.unmodifiableSet( mCycles );
+  }
+
+  private void define( final String key, final String value ) {
+    undefine( key );
+
+    final var template = parse( value );
+    mDefinitions.put( key, value );
+    mTemplates.put( key, template );
+
+    for( int i = 1; i < template.length; i += 2 ) {
+      mDependents.computeIfAbsent( template[ i ], k -> new HashSet<>() )
+                 .add( key );
+    }
+  }
+
+  private void undefine( final String key ) {
+    final var template = mTemplates.remove( key );
+    mDefinitions.remove( key );
+
+    if( template != null ) {
+      for( int i = 1; i < template.length; i += 2 ) {
+        final var dependents = mDependents.get( template[ i ] );
+
+        if( dependents != null ) {
+          dependents.remove( key );
+
+          if( dependents.isEmpty() ) {
+            mDependents.remove( template[ i ] );
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Resolves the given keys and every key that depends on them, directly or
+   * indirectly.
+   *
+   * @param keys The keys whose definitions changed.
+   * @return The keys whose interpolated values changed.
+   */
+  private Set<String> resolve( final Set<String> keys ) {
+    final Set<String> affected = new HashSet<>( keys );
+    final var pending = new ArrayDeque<>( keys );
+
+    while( !pending.isEmpty() ) {
+      final var dependents = mDependents.get( pending.pop() );
+
+      if( dependents != null ) {
+        for( final var dependent : dependents ) {
+          if( affected.add( dependent ) ) {
+            pending.push( dependent );
+          }
+        }
+      }
+    }
+
+    final Map<String, String> previous = new HashMap<>();
+
+    for( final var key : affected ) {
+      previous.put( key, mResolved.remove( key ) );
+      mCycles.remove( key );
+    }
+
+    final Set<String> changed = new HashSet<>();
+
+    for( final var key : affected ) {
+      final var value = resolve( key );
+
+      if( value == null ? previous.get( key ) != null
+                        : !value.equals( previous.get( key ) ) ) {
+        changed.add( key );
+      }
+    }
+
+    return changed;
+  }
+
+  /**
+   * Returns the interpolated value for the given key, resolving it if it has
+   * not yet been resolved.
+   *
+   * @param key The key to resolve.
+   * @return The interpolated value, or {@code null} if the key is not defined
+   * or is already being resolved (i.e., it is part of a cycle).
+   */
+  private String resolve( final String key ) {
+    final var resolved = mResolved.get( key );
+
+    if( resolved != null ) {
+      return resolved;
+    }
+
+    final var template = mTemplates.get( key );
+
+    if( template == null ) {
+      return null;
+    }
+
+    final int index = mResolving.indexOf( key );
+
+    if( index >= 0 ) {
+      mCycles.addAll( mResolving.subList( index, mResolving.size() ) );
+      return null;
+    }
+
+    mResolving.add( key );
+
+    final var sb = new StringBuilder( mDefinitions.get( key ).length() );
+
+    for( int i = 0; i < template.length; i++ ) {
+      if( (i & 1) == 0 ) {
+        sb.append( template[ i ] );
+      }
+      else {
+        final var value = resolve( template[ i ] );
+        sb.append( value == null ? template[ i ] : value );
+      }
+    }
+
+    mResolving.remove( mResolving.size() - 1 );
+
+    final var value = sb.toString();
+    mResolved.put( key, value );
+
+    return value;
+  }
+
+  /**
+   * Splits the given value into literal text and {@code $key$} references.
+   *
+   * @param value The value to split.
+   * @return Literal text at even indexes, keys at odd indexes.
+   */
+  private static String[] parse( final String value ) {
+    final List<String> parts = new ArrayList<>();
+    int index = 0;
+    int began = value.indexOf( SIGIL );
+
+    while( began >= 0 ) {
+      final int ended = value.indexOf( SIGIL, began + 1 );
+
+      if( ended < 0 ) {
+        break;
+      }
+
+      parts.add( value.substring( index, began ) );
+      parts.add( value.substring( began, ended + 1 ) );
+      index = ended + 1;
+      began = value.indexOf( SIGIL, index );
+    }
+
+    parts.add( value.substring( index ) );
+
+    return parts.toArray( new String[ 0 ] );
+  }
+}
@@ -28,28 +28,16 @@
 package com.scrivenvar.definition;
 
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Responsible for performing string interpolation on key/value pairs stored
  * in a map. The values in the map can use a delimited syntax to refer to
  * keys in the map.
+ *
+ * @see DependencyInterpolator
  */
 public class MapInterpolator {
 
-  /**
-   * Matches variables delimited by dollar symbols.
-   */
-  private final static String REGEX = "(\\$.*?\\$)";
-
-  /**
-   * Compiled regular expression for matching delimited references.
-   */
-  private final static Pattern REGEX_PATTERN = Pattern.compile( REGEX );
-
-  private final static int GROUP_DELIMITED = 1;
-
   /**
    * Empty.
    */
@@ -58,38 +46,15 @@ public class MapInterpolator {
 
   /**
    * Performs string interpolation on the values in the given map. This will
-   * change any value in the map that contains a variable that matches
-   * {@link #REGEX_PATTERN}.
+   * change any value in the map that contains a {@code $key$} reference to
+   * another key in the map. References that cannot be resolved, including
+   * those that refer back to the value's own key, are left verbatim.
    *
    * @param map Contains values that represent references to keys.
    */
   public static void interpolate( final Map<String, String> map ) {
-    map.replaceAll( ( k, v ) -> resolve( map, v ) );
-  }
-
-  /**
-   * Given a value with zero or more key references, this will resolve all
-   * the values, recursively. If a key cannot be dereferenced, the value will
-   * contain the key name.
-   *
-   * @param map   Map to search for keys when resolving key references.
-   * @param value Value containing zero or more key references
-   * @return The given value with all embedded key references interpolated.
-   */
-  private static String resolve(
-      final Map<String, String> map, String value ) {
-    final Matcher matcher = REGEX_PATTERN.matcher( value );
-
-    while( matcher.find() ) {
-      final String keyName = matcher.group( GROUP_DELIMITED );
-      final String mapValue = map.get( keyName );
-      final String keyValue = mapValue == null
-          ? keyName
-          : resolve( map, mapValue );
-
-      value = value.replace( keyName, keyValue );
-    }
-
-    return value;
+    final var interpolator = new DependencyInterpolator();
+    interpolator.update( map );
+    map.putAll( interpolator.getResolved() );
   }
 }
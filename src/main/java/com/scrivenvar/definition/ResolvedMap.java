@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.definition;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.scrivenvar.Constants.DEFAULT_MAP_SIZE;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Responsible for publishing the interpolated definitions to the document
+ * processors. The map is read-only to the processors, which may read it from
+ * the render thread while it is being updated on the JavaFX thread. Every
+ * update increments a version number, which lets expensive structures that
+ * are derived from the definitions (such as their R form) be built once and
+ * reused until the definitions change. Each definition also records the
+ * version at which it last changed, so that values computed from a few
+ * definitions need not be recomputed when unrelated definitions change.
+ */
+public final class ResolvedMap extends AbstractMap<String, String> {
+
+  private final Map<String, String> mMap =
+      new ConcurrentHashMap<>( DEFAULT_MAP_SIZE );
+
+  private final Map<Object, Derivation> mDerivations =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Maps definition keys, and the keys of their ancestors, to the version at
+   * which they last changed.
+   */
+  private final Map<String, Long> mKeyVersions = new ConcurrentHashMap<>();
+
+  private final AtomicLong mVersion = new AtomicLong();
+
+  /**
+   * Associates a value computed from the definitions with the version of
+   * the definitions it was computed from.
+   */
+  private static final class Derivation {
+    private final long mVersion;
+    private final Object mValue;
+
+    private Derivation( final long version, final Object value ) {
+      mVersion = version;
+      mValue = value;
+    }
+  }
+
+  /**
+   * Replaces all definitions with the given definitions. The map is never
+   * empty during the update, so concurrent readers see either the old or the
+   * new value for any given key.
+   *
+   * @param map The new interpolated definitions.
+   */
+  public void update( final Map<String, String> map ) {
+    final var changed = new HashSet<String>();
+
+    for( final var entry : map.entrySet() ) {
+      if( !entry.getValue().equals( mMap.get( entry.getKey() ) ) ) {
+        changed.add( entry.getKey() );
+      }
+    }
+
+    for( final var key : mMap.keySet() ) {
+      if( !map.containsKey( key ) ) {
+        changed.add( key );
+      }
+    }
+
+    mMap.putAll( map );
+    mMap.keySet().retainAll( map.keySet() );
+    touch( changed, mVersion.incrementAndGet() );
+  }
+
+  /**
+   * Updates only the given definitions, removing those that are no longer
+   * defined.
+   *
+   * @param map  The interpolated definitions.
+   * @param keys The keys whose values changed in the given map.
+   */
+  public void update( final Map<String, String> map, final Set<String> keys ) {
+    if( !keys.isEmpty() ) {
+      for( final var key : keys ) {
+        final var value = map.get( key );
+
+        if( value == null ) {
+          mMap.remove( key );
+        }
+        else {
+          mMap.put( key, value );
+        }
+      }
+
+      touch( keys, mVersion.incrementAndGet() );
+    }
+  }
+
+  /**
+   * Records the version at which the given definitions changed. A definition
+   * such as {@code $a.b.c$} also changes the branches {@code $a.b$} and
+   * {@code $a$} that contain it.
+   *
+   * @param keys    The keys whose values changed.
+   * @param version The version that includes the changes.
+   */
+  private void touch( final Set<String> keys, final long version ) {
+    for( final var key : keys ) {
+      var branch = key;
+      int index;
+
+      mKeyVersions.put( branch, version );
+
+      while( (index = branch.lastIndexOf( '.' )) > 0 ) {
+        branch = branch.substring( 0, index ) + '$';
+        mKeyVersions.put( branch, version );
+      }
+    }
+  }
+
+  /**
+   * Returns a number that changes whenever the definitions change.
+   *
+   * @return The current version of the definitions.
+   */
+  public long getVersion() {
+    return mVersion.get();
+  }
+
+  /**
+   * Returns the version at which the given definition, or any definition
+   * within the given branch, last changed.
+   *
+   * @param key The definition key, including its sigils (e.g., {@code $a.b$}).
+   * @return The version of the definition, or 0 if it has never been defined.
+   */
+  public long getVersion( final String key ) {
+    return mKeyVersions.getOrDefault( key, 0L );
+  }
+
+  /**
+   * Returns a value computed from the current definitions. The value is
+   * computed at most once per version of the definitions, then shared by
+   * all callers that use the same key.
+   *
+   * @param key      Identifies the type of derived value.
+   * @param function Computes the derived value from the definitions.
+   * @param <T>      The type of derived value.
+   * @return The value derived from the current version of the definitions.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T derive(
+      final Object key, final Function<Map<String, String>, T> function ) {
+    final long version = getVersion();
+    final var derivation = mDerivations.get( key );
+
+    if( derivation != null && derivation.mVersion == version ) {
+      return (T) derivation.mValue;
+    }
+
+    // If the definitions change while computing, the next call recomputes.
+    final T value = function.apply( this );
+    mDerivations.put( key, new Derivation( version, value ) );
+
+    return value;
+  }
+
+  @Override
+  public String get( final Object key ) {
+    return mMap.get( key );
+  }
+
+  @Override
+  public boolean containsKey( final Object key ) {
+    return mMap.containsKey( key );
+  }
+
+  @Override
+  public int size() {
+    return mMap.size();
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return unmodifiableMap( mMap ).entrySet();
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.definition;
+
+import com.scrivenvar.sigils.YamlSigilOperator;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeItem.TreeModificationEvent;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import static com.scrivenvar.Constants.DEFAULT_MAP_SIZE;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Maintains the flat map of uninterpolated definitions for a tree of
+ * {@link TreeItem} instances. Rather than walking the entire tree whenever a
+ * tree item changes, each {@link TreeModificationEvent} is translated into
+ * the definitions that were added, changed, or removed. The work is
+ * proportional to the size of the modified subtree.
+ * <p>
+ * As with {@link TreeItemAdapter#toMap(TreeItem)}, each leaf provides the
+ * value for the key formed by its ancestors. When several leaves share a
+ * parent, the most recently added or changed leaf provides the value.
+ * </p>
+ */
+public class TreeItemMapper {
+
+  /**
+   * Uninterpolated definitions, keyed by name.
+   */
+  private final Map<String, String> mDefinitions =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Maps each leaf to the key it defines.
+   */
+  private final Map<TreeItem<?>, String> mLeafKeys =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Maps each key to the leaves that define it, in order of definition.
+   */
+  private final Map<String, Set<TreeItem<?>>> mKeyLeaves =
+      new HashMap<>( DEFAULT_MAP_SIZE );
+
+  /**
+   * Builds the map of definitions for the given tree.
+   *
+   * @param root The root of the tree to map, which is not itself mapped.
+   */
+  public TreeItemMapper( final TreeItem<?> root ) {
+    addSubtree( root, new HashMap<>() );
+  }
+
+  /**
+   * Updates the definitions to reflect the given modification to the tree.
+   *
+   * @param event The tree modification that was made.
+   * @return The changed definitions, which map to {@code null} when removed.
+   */
+  public Map<String, String> apply( final TreeModificationEvent<?> event ) {
+    final Map<String, String> changes = new HashMap<>();
+    final TreeItem<?> item = event.getTreeItem();
+
+    if( TreeItem.valueChangedEvent().equals( event.getEventType() ) ) {
+      // The event fires before the item's own listeners see the change.
+      if( item instanceof DefinitionTreeItem ) {
+        ((DefinitionTreeItem<?>) item).invalidatePath();
+      }
+
+      if( item.isLeaf() ) {
+        define( item, changes );
+      }
+      else {
+        // Renaming a key moves all the definitions beneath it.
+        removeSubtree( item, changes );
+        addSubtree( item, changes );
+      }
+    }
+    else {
+      for( final var child : event.getRemovedChildren() ) {
+        removeSubtree( child, changes );
+      }
+
+      for( final var child : event.getAddedChildren() ) {
+        if( child instanceof DefinitionTreeItem ) {
+          ((DefinitionTreeItem<?>) child).invalidatePath();
+        }
+
+        addSubtree( child, changes );
+      }
+
+      // The parent may have become a leaf, or stopped being one.
+      if( item.isLeaf() ) {
+        define( item, changes );
+      }
+      else {
+        undefine( item, changes );
+      }
+    }
+
+    return changes;
+  }
+
+  /**
+   * Returns the definitions for the entire tree.
+   *
+   * @return An unmodifiable view of the definitions, keyed by name.
+   */
+  public Map<String, String> getDefinitions() {
+    return unmodifiableMap( mDefinitions );
+  }
+
+  private void addSubtree(
+      final TreeItem<?> root, final Map<String, String> changes ) {
+    final var stack = new Stack<TreeItem<?>>();
+    stack.push( root );
+
+    while( !stack.isEmpty() ) {
+      final TreeItem<?> node = stack.pop();
+
+      if( node.isLeaf() ) {
+        define( node, changes );
+      }
+      else {
+        node.getChildren().forEach( stack::push );
+      }
+    }
+  }
+
+  private void removeSubtree(
+      final TreeItem<?> root, final Map<String, String> changes ) {
+    final var stack = new Stack<TreeItem<?>>();
+    stack.push( root );
+
+    while( !stack.isEmpty() ) {
+      final TreeItem<?> node = stack.pop();
+
+      undefine( node, changes );
+      node.getChildren().forEach( stack::push );
+    }
+  }
+
+  /**
+   * Defines (or redefines) the key for the given leaf using its value.
+   */
+  private void define(
+      final TreeItem<?> leaf, final Map<String, String> changes ) {
+    final var parent = leaf.getParent();
+
+    // The root is not a definition.
+    if( parent == null ) {
+      return;
+    }
+
+    final var key = toKey( parent );
+    final var previous = mLeafKeys.put( leaf, key );
+
+    if( previous != null && !previous.equals( key ) ) {
+      release( leaf, previous, changes );
+    }
+
+    final var leaves = mKeyLeaves.computeIfAbsent(
+        key, k -> new LinkedHashSet<>() );
+
+    // Move the leaf to the end so that it provides the value.
+    leaves.remove( leaf );
+    leaves.add( leaf );
+
+    put( key, String.valueOf( leaf.getValue() ), changes );
+  }
+
+  /**
+   * Removes the definition provided by the given item, if any.
+   */
+  private void undefine(
+      final TreeItem<?> item, final Map<String, String> changes ) {
+    final var key = mLeafKeys.remove( item );
+
+    if( key != null ) {
+      release( item, key, changes );
+    }
+  }
+
+  /**
+   * Detaches the given leaf from the given key. If another leaf still
+   * defines the key, that leaf provides the value; otherwise, the key is
+   * removed.
+   */
+  private void release(
+      final TreeItem<?> leaf, final String key,
+      final Map<String, String> changes ) {
+    final var leaves = mKeyLeaves.get( key );
+
+    if( leaves != null ) {
+      leaves.remove( leaf );
+
+      if( leaves.isEmpty() ) {
+        mKeyLeaves.remove( key );
+        mDefinitions.remove( key );
+        changes.put( key, null );
+      }
+      else {
+        TreeItem<?> last = null;
+
+        for( final var remaining : leaves ) {
+          last = remaining;
+        }
+
+        put( key, String.valueOf( last.getValue() ), changes );
+      }
+    }
+  }
+
+  private void put(
+      final String key, final String value,
+      final Map<String, String> changes ) {
+    mDefinitions.put( key, value );
+    changes.put( key, value );
+  }
+
+  private String toKey( final TreeItem<?> node ) {
+    return node instanceof DefinitionTreeItem
+        ? YamlSigilOperator.entoken( ((DefinitionTreeItem<?>) node).getPath() )
+        : TreeItemAdapter.toPath( node );
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.editors;
+
+import com.scrivenvar.processors.markdown.MarkdownDocument;
+import com.scrivenvar.spelling.api.SpellChecker;
+import com.vladsch.flexmark.ast.Text;
+import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.scrivenvar.Constants.STYLE_MISSPELLED;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.concurrent.ForkJoinPool.commonPool;
+import static javafx.application.Platform.runLater;
+
+/**
+ * Responsible for spell checking an entire document away from the JavaFX
+ * application thread. The document's syntax tree is requested from the
+ * {@link MarkdownDocument} shared with the preview, then its paragraphs are
+ * proofread in batches that the spell checker spreads across threads. The
+ * visible paragraphs are proofread and styled first; the remaining
+ * paragraphs are styled as their batches finish.
+ * <p>
+ * Results are only applied to paragraphs whose text is unchanged since the
+ * document was proofread, so edits made while proofreading are not styled
+ * with stale offsets.
+ * </p>
+ */
+public final class DocumentProofreader {
+  /**
+   * Number of paragraphs styled together on the JavaFX application thread.
+   */
+  private static final int BATCH_SIZE = 256;
+
+  private static final Collection<String> MISSPELLED =
+      singleton( STYLE_MISSPELLED );
+
+  private final SpellChecker mSpellChecker;
+  private final MarkdownDocument mDocument;
+
+  /**
+   * Incremented for every request; batches from superseded requests are
+   * abandoned.
+   */
+  private final AtomicLong mRevision = new AtomicLong();
+
+  /**
+   * A run of text to proofread, with its offset into the document.
+   */
+  private static final class Segment {
+    private final String mText;
+    private final int mOffset;
+
+    private Segment( final String text, final int offset ) {
+      mText = text;
+      mOffset = offset;
+    }
+  }
+
+  /**
+   * The styles computed for a single paragraph.
+   */
+  private static final class ParagraphStyle {
+    private final int mIndex;
+    private final String mText;
+    private final StyleSpans<Collection<String>> mSpans;
+
+    private ParagraphStyle(
+        final int index, final String text,
+        final StyleSpans<Collection<String>> spans ) {
+      mIndex = index;
+      mText = text;
+      mSpans = spans;
+    }
+  }
+
+  /**
+   * @param spellChecker Determines the words missing from the lexicon.
+   * @param document     Parses the document to find the text to proofread.
+   */
+  public DocumentProofreader(
+      final SpellChecker spellChecker, final MarkdownDocument document ) {
+    mSpellChecker = spellChecker;
+    mDocument = document;
+  }
+
+  /**
+   * Proofreads the entire document in the given editor, in the background.
+   * This must be called from the JavaFX application thread.
+   *
+   * @param editor   The editor whose paragraphs receive spelling styles.
+   * @param snapshot The editor's current text.
+   */
+  public void proofread(
+      final StyleClassedTextArea editor, final TextSnapshot snapshot ) {
+    final long revision = mRevision.incrementAndGet();
+    int first;
+    int last;
+
+    try {
+      first = editor.firstVisibleParToAllParIndex();
+      last = editor.lastVisibleParToAllParIndex();
+    } catch( final RuntimeException ex ) {
+      // The editor has not been laid out, so no paragraphs are visible.
+      first = 0;
+      last = 0;
+    }
+
+    final int began = first;
+    final int ended = last + 1;
+
+    commonPool().execute(
+        () -> proofread( editor, snapshot, began, ended, revision ) );
+  }
+
+  /**
+   * Proofreads the visible paragraphs, then the paragraphs that follow them,
+   * then the paragraphs that precede them.
+   */
+  private void proofread(
+      final StyleClassedTextArea editor, final TextSnapshot snapshot,
+      final int visibleBegan, final int visibleEnded, final long revision ) {
+    final var text = snapshot.getText();
+    final int[] lines = lineOffsets( text );
+    final int count = lines.length - 1;
+    final var segments = new ArrayList<Segment>();
+    final int[] firstSegments = collect( snapshot, lines, segments );
+    final int began = min( visibleBegan, count );
+    final int ended = max( began, min( visibleEnded, count ) );
+
+    final var ranges = new ArrayList<int[]>();
+    ranges.add( new int[]{began, ended} );
+
+    for( int i = ended; i < count; i += BATCH_SIZE ) {
+      ranges.add( new int[]{i, min( i + BATCH_SIZE, count )} );
+    }
+
+    for( int i = 0; i < began; i += BATCH_SIZE ) {
+      ranges.add( new int[]{i, min( i + BATCH_SIZE, began )} );
+    }
+
+    for( final var range : ranges ) {
+      if( revision != mRevision.get() ) {
+        return;
+      }
+
+      final int first = firstSegments[ range[ 0 ] ];
+      final var misspellings = proofread( segments, first,
+                                          firstSegments[ range[ 1 ] ] );
+      final var styles = new ArrayList<ParagraphStyle>();
+
+      for( int i = range[ 0 ]; i < range[ 1 ]; i++ ) {
+        final var style = style(
+            text, lines, segments, firstSegments, misspellings, first, i );
+
+        if( style != null ) {
+          styles.add( style );
+        }
+      }
+
+      if( !styles.isEmpty() ) {
+        runLater( () -> apply( editor, styles, revision ) );
+      }
+    }
+  }
+
+  /**
+   * Proofreads a run of segments as a single batch, which the spell checker
+   * spreads across threads.
+   *
+   * @param segments The text nodes of the document.
+   * @param began    Index of the first segment to proofread.
+   * @param ended    Index following the last segment to proofread.
+   * @return The offsets of the misspelled words in each segment, relative
+   * to the segment, as consecutive pairs of starting and ending offsets.
+   */
+  private List<List<Integer>> proofread(
+      final List<Segment> segments, final int began, final int ended ) {
+    final var texts = new ArrayList<String>( ended - began );
+    final var misspellings = new ArrayList<List<Integer>>( ended - began );
+
+    for( int i = began; i < ended; i++ ) {
+      // Treat hyphenated compound words as individual words.
+      texts.add( segments.get( i ).mText.replace( '-', ' ' ) );
+      misspellings.add( new ArrayList<>() );
+    }
+
+    mSpellChecker.proofread(
+        texts, i -> ( misspelled, prevIndex, currIndex ) -> {
+          final var offsets = misspellings.get( i );
+          offsets.add( prevIndex );
+          offsets.add( currIndex );
+        } );
+
+    return misspellings;
+  }
+
+  /**
+   * Styles the misspelled words of a single paragraph.
+   *
+   * @param misspellings The misspelled words of the proofread segments.
+   * @param first        Index of the first proofread segment.
+   * @param index        Index of the paragraph to style.
+   * @return The paragraph's styles, or {@code null} if all its words are
+   * in the lexicon.
+   */
+  private ParagraphStyle style(
+      final String text, final int[] lines, final List<Segment> segments,
+      final int[] firstSegments, final List<List<Integer>> misspellings,
+      final int first, final int index ) {
+    final int began = lines[ index ];
+    final int ended = lines[ index + 1 ] - 1;
+    final var builder = new StyleSpansBuilder<Collection<String>>();
+    int styled = began;
+
+    for( int i = firstSegments[ index ]; i < firstSegments[ index + 1 ]; i++ ) {
+      final int offset = segments.get( i ).mOffset;
+      final var offsets = misspellings.get( i - first );
+
+      for( int j = 0; j < offsets.size(); j += 2 ) {
+        final int prevIndex = offsets.get( j ) + offset;
+        final int currIndex = min( offsets.get( j + 1 ) + offset, ended );
+
+        if( prevIndex >= styled && prevIndex < currIndex ) {
+          // Clear styling between lexiconically absent words.
+          builder.add( emptyList(), prevIndex - styled );
+          builder.add( MISSPELLED, currIndex - prevIndex );
+          styled = currIndex;
+        }
+      }
+    }
+
+    if( styled == began ) {
+      return null;
+    }
+
+    // Clear styling after the last lexiconically absent word.
+    builder.add( emptyList(), ended - styled );
+
+    return new ParagraphStyle(
+        index, text.substring( began, ended ), builder.create() );
+  }
+
+  /**
+   * Styles the given paragraphs, provided their text is unchanged.
+   */
+  private void apply(
+      final StyleClassedTextArea editor, final List<ParagraphStyle> styles,
+      final long revision ) {
+    if( revision != mRevision.get() ) {
+      return;
+    }
+
+    final var paragraphs = editor.getParagraphs();
+
+    for( final var style : styles ) {
+      final int index = style.mIndex;
+
+      if( index < paragraphs.size() &&
+          paragraphs.get( index ).getText().equals( style.mText ) ) {
+        editor.setStyleSpans( index, 0, style.mSpans );
+      }
+    }
+  }
+
+  /**
+   * Collects the text nodes of the given document, in document order.
+   *
+   * @param snapshot The document to parse.
+   * @param lines    Offsets of each paragraph into the document.
+   * @param segments Receives the text to proofread.
+   * @return Index of the first segment for each paragraph, followed by the
+   * number of segments.
+   */
+  private int[] collect(
+      final TextSnapshot snapshot, final int[] lines,
+      final List<Segment> segments ) {
+    final int count = lines.length - 1;
+    final int[] firstSegments = new int[ count + 1 ];
+    int line = 0;
+
+    for( final var node : mDocument.parse( snapshot ).getDescendants() ) {
+      if( node instanceof Text ) {
+        final int offset = node.getStartOffset();
+
+        while( line < count && lines[ line + 1 ] <= offset ) {
+          firstSegments[ ++line ] = segments.size();
+        }
+
+        segments.add( new Segment( node.getChars().toString(), offset ) );
+      }
+    }
+
+    while( line < count ) {
+      firstSegments[ ++line ] = segments.size();
+    }
+
+    return firstSegments;
+  }
+
+  /**
+   * Returns the offset of each paragraph in the given text, followed by the
+   * length of the text plus one, as though the text ended with a newline.
+   */
+  private static int[] lineOffsets( final String text ) {
+    int[] offsets = new int[ 1024 ];
+    int count = 1;
+
+    for( int i = text.indexOf( '\n' ); i >= 0;
+         i = text.indexOf( '\n', i + 1 ) ) {
+      if( count + 1 >= offsets.length ) {
+        offsets = Arrays.copyOf( offsets, offsets.length * 2 );
+      }
+
+      offsets[ count++ ] = i + 1;
+    }
+
+    offsets[ count++ ] = text.length() + 1;
+
+    return Arrays.copyOf( offsets, count );
+  }
+}
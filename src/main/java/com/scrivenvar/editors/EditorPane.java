@@ -31,6 +31,7 @@ import com.scrivenvar.Services;
 import com.scrivenvar.service.Options;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.event.Event;
@@ -38,6 +39,7 @@ import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.Pane;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.richtext.model.PlainTextChange;
 import org.fxmisc.undo.UndoManager;
 import org.fxmisc.wellbehaved.event.EventPattern;
 import org.fxmisc.wellbehaved.event.Nodes;
@@ -67,11 +69,26 @@ public class EditorPane extends Pane {
       new VirtualizedScrollPane<>( mEditor );
   private final ObjectProperty<Path> mPath = new SimpleObjectProperty<>();
 
+  /**
+   * The most recent revision of the text, replaced with every edit.
+   */
+  private final ReadOnlyObjectWrapper<TextSnapshot> mSnapshot =
+      new ReadOnlyObjectWrapper<>();
+
+  private long mRevision;
+
   public EditorPane() {
     getScrollPane().setVbarPolicy( ScrollPane.ScrollBarPolicy.ALWAYS );
     fontsSizeProperty().addListener(
         ( l, o, n ) -> setFontSize( n.intValue() )
     );
+
+    // Use the plain text changes so that style changes are ignored; unlike
+    // the text property, this doesn't assemble the text on every edit.
+    mSnapshot.set( createSnapshot( null ) );
+    mEditor.plainTextChanges()
+           .filter( change -> !change.isIdentity() )
+           .subscribe( change -> mSnapshot.set( createSnapshot( change ) ) );
   }
 
   @Override
@@ -151,6 +168,29 @@ public class EditorPane extends Pane {
     getUndoManager().mark();
   }
 
+  /**
+   * Returns an immutable view of the text as of the most recent edit. This
+   * must be called from the JavaFX application thread, but the snapshot
+   * may be read from any thread.
+   *
+   * @return The current revision of the text.
+   */
+  public TextSnapshot getSnapshot() {
+    return mSnapshot.get();
+  }
+
+  /**
+   * Call to hook into revisions of the text area, which are announced with
+   * every edit. Unlike {@link #addTextChangeListener(ChangeListener)}, the
+   * text is not assembled unless the listener asks for it.
+   *
+   * @param listener Receives editor text snapshots.
+   */
+  public void addSnapshotListener(
+      final ChangeListener<? super TextSnapshot> listener ) {
+    mSnapshot.getReadOnlyProperty().addListener( listener );
+  }
+
   /**
    * Call to hook into changes to the text area.
    *
@@ -224,6 +264,12 @@ public class EditorPane extends Pane {
     mPath.set( path );
   }
 
+  private TextSnapshot createSnapshot( final PlainTextChange change ) {
+    final var document = getEditor().getContent().snapshot();
+    final var revision = change == null ? 0 : ++mRevision;
+    return new TextSnapshot( revision, document, change );
+  }
+
   /**
    * Sets the font size in points.
    *
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.editors;
+
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Represents an immutable, revision-numbered view of an editor's text. The
+ * view shares the editor's persistent document structure, so taking a
+ * snapshot is cheap; the text is only assembled into a {@link String} when
+ * a consumer asks for it, at most once per snapshot, on whatever thread
+ * the consumer runs.
+ * <p>
+ * The snapshot also describes the edit that produced it, by offset and
+ * lengths only, so that it does not keep the edit's text alive.
+ * </p>
+ */
+public final class TextSnapshot {
+  private final long mRevision;
+  private final StyledDocument<?, ?, ?> mDocument;
+  private final int mChangePosition;
+  private final int mInsertedLength;
+  private final int mRemovedLength;
+
+  /**
+   * The document's text, assembled upon first request.
+   */
+  private volatile String mText;
+
+  /**
+   * @param revision Increases with every change to the editor's text.
+   * @param document An immutable copy of the editor's document.
+   * @param change   The edit that produced this revision, or {@code null}
+   *                 for the editor's initial revision.
+   */
+  public TextSnapshot(
+      final long revision,
+      final StyledDocument<?, ?, ?> document,
+      final PlainTextChange change ) {
+    mRevision = revision;
+    mDocument = document;
+
+    if( change == null ) {
+      mChangePosition = -1;
+      mInsertedLength = 0;
+      mRemovedLength = 0;
+    }
+    else {
+      mChangePosition = change.getPosition();
+      mInsertedLength = change.getInserted().length();
+      mRemovedLength = change.getRemoved().length();
+    }
+  }
+
+  /**
+   * Returns a number that identifies this version of the text; two
+   * snapshots from the same editor having the same revision have the same
+   * text.
+   *
+   * @return The revision number.
+   */
+  public long getRevision() {
+    return mRevision;
+  }
+
+  /**
+   * Returns the offset at which the edit that produced this revision
+   * removed and inserted its text.
+   *
+   * @return The offset into the text, or {@code -1} if this is the initial
+   * revision.
+   */
+  public int getChangePosition() {
+    return mChangePosition;
+  }
+
+  /**
+   * Returns the number of characters the edit that produced this revision
+   * inserted at {@link #getChangePosition()}.
+   *
+   * @return The inserted length, {@code 0} for the initial revision.
+   */
+  public int getInsertedLength() {
+    return mInsertedLength;
+  }
+
+  /**
+   * Returns the number of characters the edit that produced this revision
+   * removed from the previous revision at {@link #getChangePosition()}.
+   *
+   * @return The removed length, {@code 0} for the initial revision.
+   */
+  public int getRemovedLength() {
+    return mRemovedLength;
+  }
+
+  /**
+   * Returns the number of characters in the text, without assembling it.
+   *
+   * @return The text length.
+   */
+  public int getLength() {
+    return mDocument.length();
+  }
+
+  /**
+   * Returns the entire text of this revision. Repeated calls return the
+   * same instance.
+   *
+   * @return The text, never {@code null}.
+   */
+  public String getText() {
+    var text = mText;
+
+    if( text == null ) {
+      text = mDocument.getText();
+      mText = text;
+    }
+
+    return text;
+  }
+
+  /**
+   * Answers whether the given string is the text returned by
+   * {@link #getText()}, without assembling the text.
+   *
+   * @param text The string to compare by identity.
+   * @return {@code true} if the string is this revision's assembled text.
+   */
+  public boolean isText( final String text ) {
+    //noinspection StringEquality
+    return text != null && text == mText;
+  }
+
+  /**
+   * Returns part of the text of this revision, without assembling the
+   * entire text.
+   *
+   * @param start Offset of the first character, inclusive.
+   * @param end   Offset of the last character, exclusive.
+   * @return The text between the given offsets.
+   */
+  public String getText( final int start, final int end ) {
+    final var text = mText;
+
+    return text == null
+        ? mDocument.subSequence( start, end ).getText()
+        : text.substring( start, end );
+  }
+}
@@ -31,7 +31,7 @@ import com.scrivenvar.dialogs.ImageDialog;
 import com.scrivenvar.dialogs.LinkDialog;
 import com.scrivenvar.editors.EditorPane;
 import com.scrivenvar.processors.markdown.BlockExtension;
-import com.scrivenvar.processors.markdown.MarkdownProcessor;
+import com.scrivenvar.processors.markdown.MarkdownDocument;
 import com.vladsch.flexmark.ast.Link;
 import com.vladsch.flexmark.html.renderer.AttributablePart;
 import com.vladsch.flexmark.util.ast.Node;
@@ -70,8 +70,17 @@ public class MarkdownEditorPane extends EditorPane {
   private static final Pattern PATTERN_NEW_LINE = Pattern.compile(
       "^>|(((#+)|([*+\\-])|([1-9]\\.))\\s+).+" );
 
+  /**
+   * Parses the editor's text once per revision for all consumers.
+   */
+  private final MarkdownDocument mDocument = new MarkdownDocument();
+
   public MarkdownEditorPane() {
     initEditor();
+
+    mDocument.setSnapshot( getSnapshot() );
+    addSnapshotListener(
+        ( ob, previous, snapshot ) -> mDocument.setSnapshot( snapshot ) );
   }
 
   private void initEditor() {
@@ -110,6 +119,11 @@ public class MarkdownEditorPane extends EditorPane {
    * Injecting a token into the document, as per a previous version of the
    * application, can instruct the preview pane where to shift the viewport.
    * </p>
+   * <p>
+   * The syntax tree of the editor's current text is used when it has been
+   * parsed; otherwise, the identifier is estimated by scanning the editor's
+   * paragraphs.
+   * </p>
    *
    * @param paraIndex The paragraph index from the editor pane to scroll to
    *                  in the preview pane, which  will be approximated if an
@@ -118,6 +132,20 @@ public class MarkdownEditorPane extends EditorPane {
    * number once the Markdown is rendered into HTML.
    */
   public int approximateParagraphId( final int paraIndex ) {
+    final int id = getDocument().getParagraphId( paraIndex );
+
+    return id < 0 ? scanParagraphId( paraIndex ) : id;
+  }
+
+  /**
+   * Estimates the paragraph identifier by scanning the editor's paragraphs
+   * for lines that likely begin a new block.
+   *
+   * @param paraIndex The paragraph index from the editor pane.
+   * @return A unique identifier that correlates to an equivalent paragraph
+   * number once the Markdown is rendered into HTML.
+   */
+  private int scanParagraphId( final int paraIndex ) {
     final StyleClassedTextArea editor = getEditor();
     final List<String> lines = new ArrayList<>( 4096 );
 
@@ -164,6 +192,15 @@ public class MarkdownEditorPane extends EditorPane {
     return Math.max( lines.size() - 1, 0 );
   }
 
+  /**
+   * Returns the model that parses this editor's text into a syntax tree.
+   *
+   * @return The document model shared by the preview and spell checker.
+   */
+  public MarkdownDocument getDocument() {
+    return mDocument;
+  }
+
   /**
    * Gets the index of the paragraph where the caret is positioned.
    *
@@ -318,10 +355,9 @@ public class MarkdownEditorPane extends EditorPane {
     final String selectedText = textArea.getSelectedText();
 
     // Get the current paragraph, convert to Markdown nodes.
-    final MarkdownProcessor mp = new MarkdownProcessor( null );
     final int p = textArea.getCurrentParagraph();
     final String paragraph = textArea.getText( p );
-    final Node node = mp.toNode( paragraph );
+    final Node node = getDocument().toNode( paragraph );
     final LinkVisitor visitor = new LinkVisitor( textArea.getCaretColumn() );
     final Link link = visitor.process( node );
 
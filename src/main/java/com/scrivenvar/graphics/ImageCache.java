@@ -0,0 +1,251 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.graphics;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.scrivenvar.Constants.CACHE_DIRECTORY;
+import static com.scrivenvar.graphics.RenderingSettings.RENDERING_HINTS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Responsible for persisting rasterized and scaled images across sessions.
+ * Images are stored as PNG files named after a hash of the source image's
+ * content, the target width, and the rendering hints. Because the name
+ * depends on the content, a changed source image never matches a stale
+ * entry. The least recently used files are deleted once the cache exceeds
+ * {@link #MAX_CACHE_BYTES}.
+ */
+public final class ImageCache {
+
+  /**
+   * Changing the format of cached images requires changing this version.
+   */
+  private static final String VERSION = "1";
+
+  private static final String EXTENSION = ".png";
+
+  private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+  private static final Path DIRECTORY = CACHE_DIRECTORY.resolve( "images" );
+
+  /**
+   * Rendering hints affect the output, so they are part of every key.
+   */
+  private static final String HINTS = new TreeMap<>(
+      RENDERING_HINTS.entrySet().stream().collect(
+          toMap(
+              e -> String.valueOf( e.getKey() ),
+              e -> String.valueOf( e.getValue() ) ) ) ).toString();
+
+  /**
+   * Approximate size of the cache directory, or {@code -1} if not yet known.
+   */
+  private static final AtomicLong sCacheBytes = new AtomicLong( -1 );
+
+  private ImageCache() {
+  }
+
+  /**
+   * Returns the image previously stored for the given source content and
+   * width. If there is no such image, or it cannot be read, the image is
+   * created using the given function and stored for subsequent calls.
+   *
+   * @param source The bytes of the image source, such as an SVG document.
+   * @param width  The width of the image that will be created.
+   * @param render Creates the image when it is not cached.
+   * @return The cached or newly created image.
+   * @throws Exception The image could not be created.
+   */
+  public static BufferedImage computeIfAbsent(
+      final byte[] source, final int width,
+      final Callable<BufferedImage> render ) throws Exception {
+    final var path = DIRECTORY.resolve( toKey( source, width ) + EXTENSION );
+    final var cached = read( path );
+
+    if( cached != null ) {
+      return cached;
+    }
+
+    final var image = render.call();
+
+    if( image != null ) {
+      write( path, image );
+    }
+
+    return image;
+  }
+
+  /**
+   * Reads the image at the given path, marking it as recently used. Corrupt
+   * files are deleted.
+   *
+   * @return The image, or {@code null} if it could not be read.
+   */
+  private static BufferedImage read( final Path path ) {
+    if( Files.isRegularFile( path ) ) {
+      try {
+        final var image = ImageIO.read( path.toFile() );
+
+        if( image != null ) {
+          Files.setLastModifiedTime(
+              path, FileTime.fromMillis( System.currentTimeMillis() ) );
+          return image;
+        }
+      } catch( final IOException ignored ) {
+        // Fall through to delete the corrupt entry.
+      }
+
+      delete( path );
+    }
+
+    return null;
+  }
+
+  /**
+   * Writes the given image to a temporary file that is then moved into
+   * place, so that concurrent readers never see a partial file. Failures are
+   * ignored because the cache is only an optimization.
+   */
+  private static void write( final Path path, final BufferedImage image ) {
+    try {
+      Files.createDirectories( DIRECTORY );
+
+      final var temp = Files.createTempFile( DIRECTORY, "img", ".tmp" );
+
+      try {
+        ImageIO.write( image, "png", temp.toFile() );
+        Files.move( temp, path, ATOMIC_MOVE, REPLACE_EXISTING );
+      } finally {
+        Files.deleteIfExists( temp );
+      }
+
+      if( sCacheBytes.get() < 0 ) {
+        sCacheBytes.compareAndSet( -1, size() );
+      }
+      else if( sCacheBytes.addAndGet( Files.size( path ) ) > MAX_CACHE_BYTES ) {
+        evict();
+      }
+    } catch( final IOException ignored ) {
+      // The image will be created again next time.
+    }
+  }
+
+  /**
+   * Deletes the least recently used images until the cache is three quarters
+   * of its maximum size.
+   */
+  private static synchronized void evict() throws IOException {
+    final var files = new ArrayList<Path>();
+
+    try( final Stream<Path> stream = Files.list( DIRECTORY ) ) {
+      stream.filter( p -> p.toString().endsWith( EXTENSION ) )
+            .forEach( files::add );
+    }
+
+    files.sort( Comparator.comparingLong( ImageCache::lastModified ) );
+
+    long bytes = size();
+
+    for( final var file : files ) {
+      if( bytes <= MAX_CACHE_BYTES / 4 * 3 ) {
+        break;
+      }
+
+      bytes -= size( file );
+      delete( file );
+    }
+
+    sCacheBytes.set( bytes );
+  }
+
+  private static long size() throws IOException {
+    try( final Stream<Path> stream = Files.list( DIRECTORY ) ) {
+      return stream.mapToLong( ImageCache::size ).sum();
+    }
+  }
+
+  private static long size( final Path path ) {
+    try {
+      return Files.size( path );
+    } catch( final IOException ex ) {
+      return 0;
+    }
+  }
+
+  private static long lastModified( final Path path ) {
+    try {
+      return Files.getLastModifiedTime( path ).toMillis();
+    } catch( final IOException ex ) {
+      return 0;
+    }
+  }
+
+  private static void delete( final Path path ) {
+    try {
+      Files.deleteIfExists( path );
+    } catch( final IOException ignored ) {
+      // Try again on the next eviction.
+    }
+  }
+
+  /**
+   * Returns a hexadecimal SHA-256 digest of the source content, the width,
+   * and the rendering hints.
+   */
+  private static String toKey( final byte[] source, final int width )
+      throws Exception {
+    final var digest = MessageDigest.getInstance( "SHA-256" );
+    digest.update( source );
+    digest.update( (VERSION + ':' + width + ':' + HINTS).getBytes( UTF_8 ) );
+
+    final var sb = new StringBuilder( 64 );
+
+    for( final var b : digest.digest() ) {
+      sb.append( Character.forDigit( (b >> 4) & 0xF, 16 ) );
+      sb.append( Character.forDigit( b & 0xF, 16 ) );
+    }
+
+    return sb.toString();
+  }
+}
@@ -40,13 +40,19 @@ import org.w3c.dom.Document;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 import static com.scrivenvar.graphics.RenderingSettings.RENDERING_HINTS;
 import static java.awt.Color.WHITE;
 import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.lang.Math.max;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.apache.batik.transcoder.SVGAbstractTranscoder.KEY_WIDTH;
 import static org.apache.batik.transcoder.image.ImageTranscoder.KEY_BACKGROUND_COLOR;
 import static org.apache.batik.util.XMLResourceDescriptor.getXMLParserClassName;
@@ -57,8 +63,24 @@ import static org.apache.batik.util.XMLResourceDescriptor.getXMLParserClassName;
 public class SVGRasterizer {
   private final static Notifier NOTIFIER = Services.load( Notifier.class );
 
-  private final static SAXSVGDocumentFactory mFactory =
-      new SAXSVGDocumentFactory( getXMLParserClassName() );
+  /**
+   * Document factories are not thread-safe, so each thread has its own.
+   */
+  private final static ThreadLocal<SAXSVGDocumentFactory> mFactory =
+      ThreadLocal.withInitial(
+          () -> new SAXSVGDocumentFactory( getXMLParserClassName() ) );
+
+  /**
+   * Rasterizes images in the background, leaving a processor free for the
+   * user interface.
+   */
+  private final static ExecutorService mExecutor = newFixedThreadPool(
+      max( 1, Runtime.getRuntime().availableProcessors() - 1 ), runnable -> {
+        final var thread = new Thread( runnable, "rasterizer" );
+        thread.setDaemon( true );
+        thread.setPriority( Thread.MIN_PRIORITY );
+        return thread;
+      } );
 
   public final static Image BROKEN_IMAGE_PLACEHOLDER;
 
@@ -171,9 +193,31 @@ public class SVGRasterizer {
     }
   }
 
+  /**
+   * Rasterizes the vector graphic file at the given URL using a background
+   * thread. If any exception happens, the future completes exceptionally.
+   *
+   * @param url   The URL to a vector graphic file, which must include the
+   *              protocol scheme (such as file:// or https://).
+   * @param width The number of pixels wide to render the image. The aspect
+   *              ratio is maintained.
+   * @return The rasterized image, once available.
+   */
+  public static CompletableFuture<Image> rasterizeLater(
+      final String url, final int width ) {
+    return CompletableFuture.supplyAsync( () -> {
+      try {
+        return rasterize( new URL( url ), width );
+      } catch( final Exception ex ) {
+        throw new CompletionException( ex );
+      }
+    }, mExecutor );
+  }
+
   /**
    * Converts an SVG drawing into a rasterized image that can be drawn on
-   * a graphics context.
+   * a graphics context. The result is cached on disk, keyed by the drawing's
+   * content and the width, so subsequent sessions need not transcode it.
    *
    * @param url   The path to the image (can be web address).
    * @param width Scale the image width to this size (aspect ratio is
@@ -182,11 +226,21 @@ public class SVGRasterizer {
    * @throws IOException         Could not read the vector graphic.
    * @throws TranscoderException Could not convert the vector graphic to an
    *                             instance of {@link Image}.
+   * @throws Exception           Could not compute the cache key.
    */
   public static Image rasterize( final URL url, final int width )
-      throws IOException, TranscoderException {
-    return rasterize(
-        mFactory.createDocument( url.toString() ), width );
+      throws Exception {
+    final byte[] source;
+
+    try( final var in = url.openStream() ) {
+      source = in.readAllBytes();
+    }
+
+    return ImageCache.computeIfAbsent( source, width, () -> {
+      final var document = mFactory.get().createDocument(
+          url.toString(), new ByteArrayInputStream( source ) );
+      return (BufferedImage) rasterize( document, width );
+    } );
   }
 
   public static Image rasterize(
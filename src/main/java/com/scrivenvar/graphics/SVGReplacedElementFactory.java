@@ -40,14 +40,29 @@ import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.swing.ImageReplacedElement;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static com.scrivenvar.graphics.SVGRasterizer.rasterize;
+import static com.scrivenvar.graphics.SVGRasterizer.BROKEN_IMAGE_PLACEHOLDER;
+import static com.scrivenvar.graphics.SVGRasterizer.rasterizeLater;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.lang.Math.max;
 
 /**
  * Responsible for running {@link SVGRasterizer} on SVG images detected within
- * a document to transform them into rasterized versions.
+ * a document to transform them into rasterized versions. Images are
+ * rasterized in the background; a placeholder is shown until the image is
+ * ready, at which point the document is laid out again.
  */
 public class SVGReplacedElementFactory
     implements ReplacedElementFactory {
@@ -62,20 +77,101 @@ public class SVGReplacedElementFactory
   private static final String HTML_IMAGE_SRC = "src";
 
   /**
-   * Constrain memory.
+   * Constrain memory to about 64 MB of 32-bit pixels.
    */
-  private static final int MAX_CACHED_IMAGES = 100;
+  private static final long MAX_CACHED_PIXELS = 16 * 1024 * 1024;
 
   /**
-   * Where to put cached image files.
+   * Shown in place of images that are being rasterized.
    */
-  private final Map<String, Image> mImageCache = new LinkedHashMap<>() {
+  private static final Image PENDING_IMAGE =
+      new BufferedImage( 1, 1, TYPE_INT_ARGB );
+
+  /**
+   * Identifies a rasterized image by its source, width, and the time its
+   * file was last modified.
+   */
+  private static final class ImageKey {
+    private final String mSource;
+    private final int mWidth;
+    private final long mModified;
+
+    private ImageKey(
+        final String source, final int width, final long modified ) {
+      mSource = source;
+      mWidth = width;
+      mModified = modified;
+    }
+
     @Override
-    protected boolean removeEldestEntry(
-        final Map.Entry<String, Image> eldest ) {
-      return size() > MAX_CACHED_IMAGES;
+    public boolean equals( final Object o ) {
+      if( this == o ) {
+        return true;
+      }
+
+      if( o instanceof ImageKey ) {
+        final var that = (ImageKey) o;
+
+        return mWidth == that.mWidth &&
+            mModified == that.mModified &&
+            mSource.equals( that.mSource );
+      }
+
+      return false;
     }
-  };
+
+    @Override
+    public int hashCode() {
+      return Objects.hash( mSource, mWidth, mModified );
+    }
+  }
+
+  /**
+   * Where to put rasterized images, in least recently used order.
+   */
+  private final Map<ImageKey, Image> mImageCache =
+      new LinkedHashMap<>( 16, .75f, true );
+
+  /**
+   * Images being rasterized.
+   */
+  private final Set<ImageKey> mPending = new HashSet<>();
+
+  /**
+   * Images that could not be rasterized since the last {@link #refresh()},
+   * which are shown as broken rather than attempted on every layout.
+   */
+  private final Set<ImageKey> mFailed = new HashSet<>();
+
+  /**
+   * Time each image file was last modified, read at most once per render so
+   * that laying out a document does not query the file system for every
+   * image.
+   */
+  private final Map<String, Long> mModified = new HashMap<>();
+
+  /**
+   * Called after images have been rasterized, to lay out the document again.
+   */
+  private final Runnable mRelayout;
+
+  /**
+   * Set when a relayout has been requested but has not yet started, so that
+   * many images completing at once cause a single relayout.
+   */
+  private final AtomicBoolean mRelayoutPending = new AtomicBoolean();
+
+  private long mCachedPixels;
+
+  /**
+   * Creates a factory that rasterizes SVG images in the background.
+   *
+   * @param relayout Called, from any thread, when rasterized images are
+   *                 ready to be shown.
+   */
+  public SVGReplacedElementFactory( final Runnable relayout ) {
+    mRelayout = relayout;
+  }
 
   @Override
   public ReplacedElement createReplacedElement(
@@ -98,6 +194,12 @@ public class SVGReplacedElementFactory
             final int width = box.getContentWidth();
             final Image image = getImage( src, width );
 
+            if( image == null ) {
+              // Reserve some space to reduce jumping when the image appears.
+              final int w = max( 1, width );
+              return new ImageReplacedElement( PENDING_IMAGE, w, w / 2 );
+            }
+
             final int w = image.getWidth( null );
             final int h = image.getHeight( null );
 
@@ -116,6 +218,17 @@ public class SVGReplacedElementFactory
   public void reset() {
   }
 
+  /**
+   * Forgets when the image files were last modified, so that images changed
+   * on disk are rasterized again, and allows images that failed to be
+   * rasterized to be attempted again. Call before laying out a new or
+   * changed document.
+   */
+  public synchronized void refresh() {
+    mModified.clear();
+    mFailed.clear();
+  }
+
   @Override
   public void remove( final Element e ) {
   }
@@ -124,8 +237,91 @@ public class SVGReplacedElementFactory
   public void setFormSubmissionListener( FormSubmissionListener listener ) {
   }
 
-  private Image getImage( final String src, final int width ) {
-    return mImageCache.computeIfAbsent( src, v -> rasterize( src, width ) );
+  /**
+   * Returns the rasterized image for the given source and width, or {@code
+   * null} if the image is being rasterized.
+   */
+  private synchronized Image getImage( final String src, final int width ) {
+    final long modified = mModified.computeIfAbsent(
+        src, SVGReplacedElementFactory::lastModified );
+    final var key = new ImageKey( src, width, modified );
+
+    if( mFailed.contains( key ) ) {
+      return BROKEN_IMAGE_PLACEHOLDER;
+    }
+
+    final var image = mImageCache.get( key );
+
+    if( image == null && mPending.add( key ) ) {
+      rasterizeLater( src, width ).whenComplete( ( raster, ex ) -> {
+        if( ex == null ) {
+          cache( key, raster );
+        }
+        else {
+          fail( key );
+          getNotifier().notify( ex.getMessage() );
+        }
+
+        relayout();
+      } );
+    }
+
+    return image;
+  }
+
+  /**
+   * Shows the broken image placeholder for an image that could not be
+   * rasterized, until the next {@link #refresh()}. The placeholder is not
+   * cached, so the image is attempted again for the next document.
+   */
+  private synchronized void fail( final ImageKey key ) {
+    mPending.remove( key );
+    mFailed.add( key );
+  }
+
+  private synchronized void cache( final ImageKey key, final Image image ) {
+    mPending.remove( key );
+    mImageCache.put( key, image );
+    mCachedPixels += pixels( image );
+
+    final Iterator<Image> eldest = mImageCache.values().iterator();
+
+    // Evict the least recently used images, but always keep the newest.
+    while( mCachedPixels > MAX_CACHED_PIXELS && mImageCache.size() > 1 ) {
+      mCachedPixels -= pixels( eldest.next() );
+      eldest.remove();
+    }
+  }
+
+  private void relayout() {
+    if( mRelayoutPending.compareAndSet( false, true ) ) {
+      EventQueue.invokeLater( () -> {
+        mRelayoutPending.set( false );
+        mRelayout.run();
+      } );
+    }
+  }
+
+  private static long pixels( final Image image ) {
+    return (long) image.getWidth( null ) * image.getHeight( null );
+  }
+
+  /**
+   * Returns the time the given file URL was last modified, or {@code 0} if
+   * the source is not a local file.
+   */
+  private static long lastModified( final String src ) {
+    try {
+      final var uri = new URI( src );
+
+      if( "file".equalsIgnoreCase( uri.getScheme() ) ) {
+        return Files.getLastModifiedTime( Path.of( uri ) ).toMillis();
+      }
+    } catch( final Exception ignored ) {
+      // Treat unreadable sources as never modified.
+    }
+
+    return 0;
   }
 
   private Notifier getNotifier() {
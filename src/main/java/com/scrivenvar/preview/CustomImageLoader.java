@@ -27,6 +27,7 @@
  */
 package com.scrivenvar.preview;
 
+import com.scrivenvar.graphics.ImageCache;
 import com.scrivenvar.util.ProtocolResolver;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -34,11 +35,21 @@ import org.xhtmlrenderer.extend.FSImage;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.swing.ImageResourceLoader;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import static com.scrivenvar.graphics.RenderingSettings.RENDERING_HINTS;
 import static com.scrivenvar.graphics.SVGRasterizer.BROKEN_IMAGE_PLACEHOLDER;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
 import static org.xhtmlrenderer.swing.AWTFSImage.createImage;
 
 /**
@@ -52,8 +63,39 @@ public class CustomImageLoader extends ImageResourceLoader {
   private static final FSImage BROKEN_IMAGE = createImage(
       BROKEN_IMAGE_PLACEHOLDER );
 
+  /**
+   * Constrain memory.
+   */
+  private static final int MAX_CACHED_IMAGES = 100;
+
+  /**
+   * Local images are decoded and scaled to a multiple of this many pixels
+   * wide, so that resizing the preview (e.g., dragging the split pane)
+   * neither decodes the file nor writes to the {@link ImageCache} for every
+   * new width. The decoded image is then shrunk in memory to fit.
+   */
+  private static final int WIDTH_STEP = 256;
+
+  /**
+   * Marks local images that need not be scaled before they are shown.
+   */
+  private static final BufferedImage UNSCALED =
+      new BufferedImage( 1, 1, TYPE_INT_RGB );
+
   private final IntegerProperty mWidthProperty = new SimpleIntegerProperty();
 
+  /**
+   * Scaled local images, keyed by URI, width step, and modification time.
+   */
+  private final Map<String, BufferedImage> mImageCache =
+      new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<String, BufferedImage> eldest ) {
+          return size() > MAX_CACHED_IMAGES;
+        }
+      };
+
   /**
    * Gets an {@link IntegerProperty} that represents the maximum width an
    * image should be scaled.
@@ -100,7 +142,10 @@ public class CustomImageLoader extends ImageResourceLoader {
   }
 
   /**
-   * Scales the image found at the given URI.
+   * Scales the image found at the given URI. Local files that are wider than
+   * the view port are scaled once per {@link #WIDTH_STEP}, then persisted in
+   * the {@link ImageCache} so that later sessions need not decode the
+   * full-resolution image.
    *
    * @param uri Path to the image file to load.
    * @param w   Ignored.
@@ -108,6 +153,92 @@ public class CustomImageLoader extends ImageResourceLoader {
    * @return Resource representing the rendered image and path.
    */
   private ImageResource scale( final String uri, final int w, final int h ) {
+    try {
+      if( "file".equals( ProtocolResolver.getProtocol( uri ) ) ) {
+        final var path = Paths.get( new URI( uri ) );
+        final var maxWidth = mWidthProperty.get();
+        final var stepWidth = toStep( maxWidth );
+        final var key = uri + '|' + stepWidth + '|' +
+            Files.getLastModifiedTime( path ).toMillis();
+
+        var image = mImageCache.get( key );
+
+        if( image == null ) {
+          image = scale( path, stepWidth );
+
+          if( image == null ) {
+            return new ImageResource( uri, BROKEN_IMAGE );
+          }
+
+          mImageCache.put( key, image );
+        }
+
+        if( image != UNSCALED ) {
+          return fit( uri, image, maxWidth );
+        }
+      }
+    } catch( final Exception ignored ) {
+      // Fall back to loading the image directly.
+    }
+
+    return scaleResource( uri, w, h );
+  }
+
+  /**
+   * Decodes and shrinks the given image file to the given width.
+   *
+   * @return The scaled image, {@link #UNSCALED} if the image is no wider than
+   * the given width, or {@code null} if the image could not be decoded.
+   */
+  private BufferedImage scale( final Path path, final int width )
+      throws Exception {
+    final var source = Files.readAllBytes( path );
+    final var imageWidth = readWidth( source );
+
+    // Images that fit need not be scaled, nor cached on disk.
+    if( imageWidth <= width || width <= 0 ) {
+      return UNSCALED;
+    }
+
+    return ImageCache.computeIfAbsent(
+        source, width, () -> scale(
+            ImageIO.read( new ByteArrayInputStream( source ) ), width ) );
+  }
+
+  /**
+   * Shrinks an image that was scaled to a width step down to the view port
+   * width, in memory.
+   */
+  private ImageResource fit(
+      final String uri, final BufferedImage image, final int maxWidth ) {
+    final var fsImage = createImage( image );
+    final var imageWidth = image.getWidth();
+
+    if( imageWidth > maxWidth ) {
+      fsImage.scale(
+          maxWidth, Math.max( 1, maxWidth * image.getHeight() / imageWidth ) );
+    }
+
+    return new ImageResource( uri, fsImage );
+  }
+
+  /**
+   * Rounds the given width up to the next {@link #WIDTH_STEP}.
+   */
+  private static int toStep( final int width ) {
+    return (width + WIDTH_STEP - 1) / WIDTH_STEP * WIDTH_STEP;
+  }
+
+  /**
+   * Scales the image found at the given URI.
+   *
+   * @param uri Path to the image file to load.
+   * @param w   Ignored.
+   * @param h   Ignored.
+   * @return Resource representing the rendered image and path.
+   */
+  private ImageResource scaleResource(
+      final String uri, final int w, final int h ) {
     final var ir = super.get( uri, w, h );
     final var image = ir.getImage();
     final var imageWidth = image.getWidth();
@@ -126,4 +257,57 @@ public class CustomImageLoader extends ImageResourceLoader {
     image.scale( newWidth, newHeight );
     return ir;
   }
+
+  /**
+   * Shrinks the given image to the given width, maintaining its aspect ratio.
+   *
+   * @param image The image to scale, may be {@code null}.
+   * @param width The width of the scaled image.
+   * @return The scaled image, or {@code null} if the image is {@code null}.
+   */
+  private static BufferedImage scale(
+      final BufferedImage image, final int width ) {
+    if( image == null ) {
+      return null;
+    }
+
+    final var height = Math.max(
+        1, (width * image.getHeight()) / image.getWidth() );
+    final var type = image.getColorModel().hasAlpha()
+        ? TYPE_INT_ARGB : TYPE_INT_RGB;
+    final var scaled = new BufferedImage( width, height, type );
+    final var graphics = scaled.createGraphics();
+
+    graphics.setRenderingHints( RENDERING_HINTS );
+    graphics.drawImage( image, 0, 0, width, height, null );
+    graphics.dispose();
+
+    return scaled;
+  }
+
+  /**
+   * Reads the width of an encoded image without decoding its pixels.
+   *
+   * @param source The encoded image.
+   * @return The image width, or {@code -1} if the format is unknown.
+   */
+  private static int readWidth( final byte[] source ) throws IOException {
+    try( final var in = ImageIO.createImageInputStream(
+        new ByteArrayInputStream( source ) ) ) {
+      final var readers = ImageIO.getImageReaders( in );
+
+      if( readers.hasNext() ) {
+        final var reader = readers.next();
+
+        try {
+          reader.setInput( in );
+          return reader.getWidth( 0 );
+        } finally {
+          reader.dispose();
+        }
+      }
+    }
+
+    return -1;
+  }
 }
@@ -40,6 +40,8 @@ import javafx.scene.Node;
 import org.jsoup.Jsoup;
 import org.jsoup.helper.W3CDom;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.w3c.dom.NodeList;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.simple.XHTMLPanel;
@@ -52,11 +54,15 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.net.URI;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import static com.scrivenvar.Constants.*;
 import static java.awt.Desktop.Action.BROWSE;
 import static java.awt.Desktop.getDesktop;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static javax.swing.SwingUtilities.invokeLater;
 import static org.xhtmlrenderer.swing.ImageResourceLoader.NO_OP_REPAINT_LISTENER;
 
@@ -162,6 +168,119 @@ public final class HTMLPreviewPane extends SwingNode {
   private final static XhtmlNamespaceHandler NS_HANDLER =
       new XhtmlNamespaceHandler();
 
+  /**
+   * Matches paragraph identifiers, which shift whenever a block is inserted
+   * or removed and so must not prevent otherwise identical blocks from
+   * matching.
+   */
+  private final static Pattern PARAGRAPH_ID = Pattern.compile(
+      " id=\"" + PARAGRAPH_ID_PREFIX + "\\d+\"" );
+
+  /**
+   * Replaces a range of the displayed document's body nodes, then updates
+   * the paragraph identifiers of the nodes that follow.
+   */
+  private static final class BodyPatch {
+    private final int mBegan;
+    private final int mRemoved;
+    private final int mExpected;
+    private final org.w3c.dom.Document mReplacement;
+    private final List<String> mIds;
+
+    /**
+     * @param began       Index of the first body node to replace.
+     * @param removed     Number of body nodes to replace.
+     * @param expected    Number of body nodes in the displayed document.
+     * @param replacement Document whose body nodes are the new nodes.
+     * @param ids         Paragraph identifiers for the nodes that follow the
+     *                    replaced nodes, in document order.
+     */
+    private BodyPatch(
+        final int began, final int removed, final int expected,
+        final org.w3c.dom.Document replacement, final List<String> ids ) {
+      mBegan = began;
+      mRemoved = removed;
+      mExpected = expected;
+      mReplacement = replacement;
+      mIds = ids;
+    }
+
+    /**
+     * Applies this patch to the given document.
+     *
+     * @param document The document being displayed.
+     * @return {@code false} if the document does not have the expected
+     * structure, in which case it is unchanged.
+     */
+    private boolean apply( final org.w3c.dom.Document document ) {
+      final var body = getBody( document );
+
+      if( body == null || body.getChildNodes().getLength() != mExpected ) {
+        return false;
+      }
+
+      final NodeList children = body.getChildNodes();
+      final var anchor = children.item( mBegan + mRemoved );
+
+      for( int i = 0; i < mRemoved; i++ ) {
+        body.removeChild( children.item( mBegan ) );
+      }
+
+      final NodeList nodes = getBody( mReplacement ).getChildNodes();
+
+      for( int i = 0; i < nodes.getLength(); i++ ) {
+        final var node = document.importNode( nodes.item( i ), true );
+        body.insertBefore( node, anchor );
+      }
+
+      renumber( anchor );
+
+      return true;
+    }
+
+    /**
+     * Assigns the new paragraph identifiers to the given node, its following
+     * siblings, and their descendants.
+     */
+    private void renumber( final org.w3c.dom.Node first ) {
+      final var ids = mIds.iterator();
+      final var stack = new ArrayList<org.w3c.dom.Node>();
+
+      for( var node = first;
+           node != null && ids.hasNext();
+           node = node.getNextSibling() ) {
+        stack.add( node );
+
+        while( !stack.isEmpty() && ids.hasNext() ) {
+          final var next = stack.remove( stack.size() - 1 );
+
+          if( next instanceof org.w3c.dom.Element ) {
+            final var element = (org.w3c.dom.Element) next;
+
+            final var id = element.getAttribute( "id" );
+
+            if( id.startsWith( PARAGRAPH_ID_PREFIX ) ) {
+              element.setAttribute( "id", ids.next() );
+            }
+          }
+
+          final NodeList children = next.getChildNodes();
+
+          for( int i = children.getLength() - 1; i >= 0; i-- ) {
+            stack.add( children.item( i ) );
+          }
+        }
+      }
+    }
+
+    private static org.w3c.dom.Element getBody(
+        final org.w3c.dom.Document document ) {
+      final var bodies = document.getElementsByTagName( "body" );
+      return bodies.getLength() == 0
+          ? null : (org.w3c.dom.Element) bodies.item( 0 );
+    }
+  }
+
   private final StringBuilder mHtmlDocument = new StringBuilder( 65536 );
   private final int mHtmlPrefixLength;
 
@@ -169,9 +288,40 @@ public final class HTMLPreviewPane extends SwingNode {
   private final JScrollPane mScrollPane = new JScrollPane( mHtmlRenderer );
   private final DocumentEventHandler mDocHandler = new DocumentEventHandler();
   private final CustomImageLoader mImageLoader = new CustomImageLoader();
+  private final SVGReplacedElementFactory mSvgFactory =
+      new SVGReplacedElementFactory( () -> mHtmlRenderer.relayout() );
 
   private Path mPath = DEFAULT_DIRECTORY;
 
+  /**
+   * Signatures of the displayed document's body nodes, ignoring paragraph
+   * identifiers. Only accessed from the thread that calls {@link #process}.
+   */
+  private List<String> mSignatures = List.of();
+
+  /**
+   * Base URL of the displayed document.
+   */
+  private String mBaseUrl = "";
+
+  /**
+   * Blocks of the displayed document, when the document was created from
+   * blocks. Only accessed from the thread that calls {@link #process}.
+   */
+  private List<PreviewBlock> mBlocks = List.of();
+
+  /**
+   * Document being displayed, only accessed from the Event Dispatch thread.
+   */
+  private org.w3c.dom.Document mDocument;
+
+  /**
+   * Nodes in the displayed document for each of its blocks, or {@code null}
+   * when the document was not created from blocks. Only accessed from the
+   * Event Dispatch thread.
+   */
+  private List<List<org.w3c.dom.Node>> mBlockNodes;
+
   /**
    * Creates a new preview pane that can scroll to the caret position within the
    * document.
@@ -185,7 +335,7 @@ public final class HTMLPreviewPane extends SwingNode {
 
     // Inject an SVG renderer that produces high-quality SVG buffered images.
     final var factory = new ChainedReplacedElementFactory();
-    factory.addFactory( new SVGReplacedElementFactory() );
+    factory.addFactory( mSvgFactory );
     factory.addFactory( new SwingReplacedElementFactory(
         NO_OP_REPAINT_LISTENER, mImageLoader ) );
 
@@ -212,19 +362,356 @@ public final class HTMLPreviewPane extends SwingNode {
 
   /**
    * Updates the internal HTML source, loads it into the preview pane, then
-   * scrolls to the caret position.
+   * scrolls to the caret position. The body of the new document is compared
+   * with the displayed document's body, node by node; when they share
+   * leading and trailing nodes, only the nodes in between are replaced and
+   * the document is laid out again, rather than loading a new document.
+   * <p>
+   * Only the conversion to W3C DOM nodes is proportional to the edit. The
+   * Jsoup parse, the signature pass, and the layout are proportional to the
+   * whole document, because Flying Saucer cannot lay out part of a document.
+   * </p>
    *
    * @param html The new HTML document to display.
    */
   public void process( final String html ) {
     final Document jsoupDoc = Jsoup.parse( decorate( html ) );
-    final org.w3c.dom.Document w3cDoc = W3C_DOM.fromJsoup( jsoupDoc );
+    jsoupDoc.outputSettings().prettyPrint( false );
+
+    final var baseUrl = getBaseUrl();
+    final var nodes = jsoupDoc.body().childNodes();
+    final var signatures = sign( nodes );
+    final var previous = mSignatures;
+    final var sameBase = baseUrl.equals( mBaseUrl );
+
+    mSignatures = signatures;
+    mBaseUrl = baseUrl;
+    mBlocks = List.of();
+
+    if( sameBase && !previous.isEmpty() ) {
+      final int count = signatures.size();
+      final int prevCount = previous.size();
+      final int shortest = min( count, prevCount );
+      int began = 0;
+      int ended = 0;
+
+      while( began < shortest &&
+          signatures.get( began ).equals( previous.get( began ) ) ) {
+        began++;
+      }
+
+      while( ended < shortest - began &&
+          signatures.get( count - ended - 1 )
+                    .equals( previous.get( prevCount - ended - 1 ) ) ) {
+        ended++;
+      }
+
+      // Nothing visible changed.
+      if( began == count && count == prevCount ) {
+        return;
+      }
+
+      final var patch = createPatch(
+          jsoupDoc, began, prevCount - ended - began, prevCount,
+          count - ended );
+
+      invokeLater( () -> {
+        if( mDocument != null && patch.apply( mDocument ) ) {
+          mDocHandler.documentStarted();
+          mSvgFactory.refresh();
+          mHtmlRenderer.relayout();
+          invokeLater( mDocHandler::documentLoaded );
+        }
+        else {
+          // The shared converter is used by the rendering thread.
+          setDocument( new W3CDom().fromJsoup( jsoupDoc ), baseUrl );
+        }
+      } );
+    }
+    else {
+      final org.w3c.dom.Document w3cDoc = W3C_DOM.fromJsoup( jsoupDoc );
+
+      // Access to a Swing component must occur from the Event Dispatch
+      // thread according to Swing threading restrictions.
+      invokeLater( () -> setDocument( w3cDoc, baseUrl ) );
+    }
+  }
+
+  /**
+   * Updates the preview pane with the given blocks, then scrolls to the caret
+   * position. The blocks are compared with the displayed document's blocks by
+   * identity; only the nodes of blocks that changed are replaced, after which
+   * the document is laid out again, rather than loading a new document. The
+   * layout still covers the whole document.
+   *
+   * @param blocks The blocks of the new document to display.
+   */
+  public void process( final List<PreviewBlock> blocks ) {
+    final var baseUrl = getBaseUrl();
+    final var previous = mBlocks;
+    final var sameBase = baseUrl.equals( mBaseUrl );
+
+    mBlocks = blocks;
+    mBaseUrl = baseUrl;
+    mSignatures = List.of();
+
+    if( sameBase && !previous.isEmpty() ) {
+      final int count = blocks.size();
+      final int prevCount = previous.size();
+      final int shortest = min( count, prevCount );
+      int began = 0;
+      int ended = 0;
+
+      while( began < shortest &&
+          blocks.get( began ) == previous.get( began ) ) {
+        began++;
+      }
+
+      while( ended < shortest - began &&
+          blocks.get( count - ended - 1 ) ==
+              previous.get( prevCount - ended - 1 ) ) {
+        ended++;
+      }
+
+      // Nothing visible changed.
+      if( began == count && count == prevCount ) {
+        return;
+      }
+
+      final int first = began;
+      final int removed = prevCount - ended - began;
+      final var inserted = blocks.subList( began, count - ended );
+      final int id = countIds( blocks.subList( 0, began ) );
+
+      // Identifiers that follow the changed blocks only shift when the number
+      // of identifiers in the changed blocks differs.
+      final boolean shifted = countIds( inserted ) !=
+          countIds( previous.subList( began, began + removed ) );
+
+      invokeLater( () -> {
+        if( mBlockNodes != null && mBlockNodes.size() == prevCount ) {
+          patch( first, removed, inserted, id, shifted );
+          mDocHandler.documentStarted();
+          mSvgFactory.refresh();
+          mHtmlRenderer.relayout();
+          invokeLater( mDocHandler::documentLoaded );
+        }
+        else {
+          setDocument( blocks, baseUrl );
+        }
+      } );
+    }
+    else {
+      invokeLater( () -> setDocument( blocks, baseUrl ) );
+    }
+  }
+
+  /**
+   * Replaces the nodes of a range of the displayed document's blocks, then
+   * renumbers the paragraph identifiers. Must be called from the Event
+   * Dispatch thread.
+   *
+   * @param began    Index of the first block to replace.
+   * @param removed  Number of blocks to replace.
+   * @param inserted The new blocks.
+   * @param id       The first paragraph identifier for the new blocks.
+   * @param shifted  Whether the blocks that follow must be renumbered.
+   */
+  private void patch(
+      final int began, final int removed, final List<PreviewBlock> inserted,
+      final int id, final boolean shifted ) {
+    final var document = mDocument;
+    final var blockNodes = mBlockNodes;
+    final var body = BodyPatch.getBody( document );
+    final var replaced = blockNodes.subList( began, began + removed );
+    final var anchor = findAnchor( blockNodes, began + removed, body );
+
+    for( final var nodes : replaced ) {
+      for( final var node : nodes ) {
+        body.removeChild( node );
+      }
+    }
+
+    replaced.clear();
+
+    for( int i = 0; i < inserted.size(); i++ ) {
+      blockNodes.add( began + i, insert( document, body, anchor,
+                                         inserted.get( i ) ) );
+    }
+
+    final int ended = shifted ? blockNodes.size() : began + inserted.size();
+    renumber( blockNodes.subList( began, ended ), id );
+  }
+
+  /**
+   * Creates a document from the given blocks, then displays it. Must be
+   * called from the Event Dispatch thread.
+   */
+  private void setDocument(
+      final List<PreviewBlock> blocks, final String baseUrl ) {
+    // The shared converter is used by the rendering thread.
+    final var document = new W3CDom().fromJsoup(
+        Jsoup.parse( HTML_PREFIX + HTML_SUFFIX ) );
+    final var body = BodyPatch.getBody( document );
+    final var anchor = body.getLastChild();
+    final var blockNodes = new ArrayList<List<org.w3c.dom.Node>>();
+
+    for( final var block : blocks ) {
+      blockNodes.add( insert( document, body, anchor, block ) );
+    }
+
+    renumber( blockNodes, 0 );
+    setDocument( document, baseUrl );
+    mBlockNodes = blockNodes;
+  }
+
+  /**
+   * Copies the nodes of the given block into the displayed document.
+   *
+   * @return The copied nodes.
+   */
+  private static List<org.w3c.dom.Node> insert(
+      final org.w3c.dom.Document document, final org.w3c.dom.Node body,
+      final org.w3c.dom.Node anchor, final PreviewBlock block ) {
+    final var nodes = new ArrayList<org.w3c.dom.Node>();
+
+    for( final var node : block.getNodes() ) {
+      nodes.add(
+          body.insertBefore( document.importNode( node, true ), anchor ) );
+    }
+
+    return nodes;
+  }
+
+  /**
+   * Returns the first node that follows the blocks before the given index,
+   * which is the trailing spacer when no block having nodes follows.
+   */
+  private static org.w3c.dom.Node findAnchor(
+      final List<List<org.w3c.dom.Node>> blockNodes, final int index,
+      final org.w3c.dom.Node body ) {
+    for( int i = index; i < blockNodes.size(); i++ ) {
+      final var nodes = blockNodes.get( i );
+
+      if( !nodes.isEmpty() ) {
+        return nodes.get( 0 );
+      }
+    }
+
+    return body.getLastChild();
+  }
+
+  /**
+   * Numbers the paragraph identifiers of the given nodes, and their
+   * descendants, in document order.
+   *
+   * @param blockNodes The nodes of consecutive blocks.
+   * @param id         The first paragraph identifier.
+   */
+  private static void renumber(
+      final List<List<org.w3c.dom.Node>> blockNodes, int id ) {
+    final var stack = new ArrayList<org.w3c.dom.Node>();
+
+    for( final var nodes : blockNodes ) {
+      for( final var node : nodes ) {
+        stack.add( node );
+
+        while( !stack.isEmpty() ) {
+          final var next = stack.remove( stack.size() - 1 );
+
+          if( next instanceof org.w3c.dom.Element ) {
+            final var element = (org.w3c.dom.Element) next;
+
+            if( element.getAttribute( "id" ).startsWith(
+                PARAGRAPH_ID_PREFIX ) ) {
+              element.setAttribute( "id", PARAGRAPH_ID_PREFIX + id++ );
+            }
+          }
+
+          final NodeList children = next.getChildNodes();
+
+          for( int i = children.getLength() - 1; i >= 0; i-- ) {
+            stack.add( children.item( i ) );
+          }
+        }
+      }
+    }
+  }
+
+  private static int countIds( final List<PreviewBlock> blocks ) {
+    int count = 0;
+
+    for( final var block : blocks ) {
+      count += block.getIdCount();
+    }
+
+    return count;
+  }
+
+  /**
+   * Creates a patch that replaces the changed body nodes of the displayed
+   * document with the corresponding nodes from the given document.
+   *
+   * @param jsoupDoc  The new document.
+   * @param began     Index of the first changed node.
+   * @param removed   Number of nodes to remove from the displayed document.
+   * @param prevCount Number of nodes in the displayed document's body.
+   * @param ended     Index following the last changed node in the new
+   *                  document.
+   * @return The changes to make to the displayed document.
+   */
+  private BodyPatch createPatch(
+      final Document jsoupDoc, final int began, final int removed,
+      final int prevCount, final int ended ) {
+    final var nodes = jsoupDoc.body().childNodes();
+    final var shell = Document.createShell( jsoupDoc.location() );
+    final var body = shell.body();
+
+    for( int i = began; i < ended; i++ ) {
+      body.appendChild( nodes.get( i ).clone() );
+    }
+
+    final var ids = new ArrayList<String>();
+
+    for( int i = ended; i < nodes.size(); i++ ) {
+      final var node = nodes.get( i );
+
+      if( node instanceof Element ) {
+        for( final var element : ((Element) node).getAllElements() ) {
+          final var id = element.id();
+
+          if( id.startsWith( PARAGRAPH_ID_PREFIX ) ) {
+            ids.add( id );
+          }
+        }
+      }
+    }
+
+    return new BodyPatch(
+        began, removed, prevCount, W3C_DOM.fromJsoup( shell ), ids );
+  }
+
+  /**
+   * Returns the HTML for each of the given nodes, without paragraph
+   * identifiers.
+   */
+  private static List<String> sign( final List<org.jsoup.nodes.Node> nodes ) {
+    final var signatures = new ArrayList<String>( nodes.size() );
+
+    for( final var node : nodes ) {
+      signatures.add(
+          PARAGRAPH_ID.matcher( node.outerHtml() ).replaceAll( "" ) );
+    }
+
+    return signatures;
+  }
 
-    // Access to a Swing component must occur from the Event Dispatch
-    // thread according to Swing threading restrictions.
-    invokeLater(
-        () -> mHtmlRenderer.setDocument( w3cDoc, getBaseUrl(), NS_HANDLER )
-    );
+  private void setDocument(
+      final org.w3c.dom.Document document, final String baseUrl ) {
+    mDocument = document;
+    mBlockNodes = null;
+    mSvgFactory.refresh();
+    mHtmlRenderer.setDocument( document, baseUrl, NS_HANDLER );
   }
 
   public void clear() {
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.preview;
+
+import org.w3c.dom.Node;
+
+import java.util.List;
+
+/**
+ * Retains the DOM nodes rendered for a single top-level block of a document.
+ * The nodes belong to a document of their own; they are copied into the
+ * displayed document by {@link HTMLPreviewPane#process(List)}. Paragraph
+ * identifiers within the nodes are numbered from zero and renumbered by the
+ * preview pane according to the block's position.
+ * <p>
+ * Blocks are immutable once created. Unchanged blocks are the same
+ * instances from one render to the next, which lets the preview pane find
+ * changed blocks by identity.
+ * </p>
+ */
+public final class PreviewBlock {
+  private final List<Node> mNodes;
+  private final int mIdCount;
+
+  /**
+   * @param nodes   The DOM nodes for the block, in document order.
+   * @param idCount The number of paragraph identifiers within the nodes.
+   */
+  public PreviewBlock( final List<Node> nodes, final int idCount ) {
+    mNodes = List.copyOf( nodes );
+    mIdCount = idCount;
+  }
+
+  /**
+   * Returns the DOM nodes rendered for this block.
+   *
+   * @return The nodes to copy into the displayed document.
+   */
+  public List<Node> getNodes() {
+    return mNodes;
+  }
+
+  /**
+   * Returns the number of paragraph identifiers within this block.
+   *
+   * @return The number of elements having a paragraph identifier.
+   */
+  public int getIdCount() {
+    return mIdCount;
+  }
+}
@@ -27,9 +27,11 @@
  */
 package com.scrivenvar.processors;
 
-import java.util.Map;
+import com.scrivenvar.definition.ResolvedMap;
+import com.scrivenvar.processors.text.TextReplacer;
+import com.scrivenvar.processors.text.YamlSigilReplacer;
 
-import static com.scrivenvar.processors.text.TextReplacementFactory.replace;
+import java.util.Map;
 
 /**
  * Processes interpolated string definitions in the document and inserts
@@ -38,12 +40,14 @@ import static com.scrivenvar.processors.text.TextReplacementFactory.replace;
  */
 public class DefinitionProcessor extends AbstractProcessor<String> {
 
-  private final Map<String, String> mDefinitions;
+  private final ResolvedMap mDefinitions;
+  private final TextReplacer mReplacer;
 
   public DefinitionProcessor(
-      final Processor<String> successor, final Map<String, String> map ) {
+      final Processor<String> successor, final ResolvedMap map ) {
     super( successor );
     mDefinitions = map;
+    mReplacer = createTextReplacer();
   }
 
   /**
@@ -55,7 +59,31 @@ public class DefinitionProcessor extends AbstractProcessor<String> {
    */
   @Override
   public String apply( final String text ) {
-    return replace( text, getDefinitions() );
+    return getTextReplacer().replace( text, getDefinitions() );
+  }
+
+  /**
+   * Creates the text replacer that finds variables in the document. Each
+   * processor has its own replacer because the replacer reuses its buffer.
+   *
+   * @return A replacer that scans the text for variables having the default
+   * syntax.
+   */
+  protected TextReplacer createTextReplacer() {
+    return new YamlSigilReplacer();
+  }
+
+  private TextReplacer getTextReplacer() {
+    return mReplacer;
+  }
+
+  /**
+   * Returns the versioned map of interpolated definitions.
+   *
+   * @return The definitions shared with the application.
+   */
+  protected ResolvedMap getResolvedMap() {
+    return mDefinitions;
   }
 
   /**
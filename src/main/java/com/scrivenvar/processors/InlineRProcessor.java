@@ -28,28 +28,41 @@
 package com.scrivenvar.processors;
 
 import com.scrivenvar.Services;
+import com.scrivenvar.definition.ResolvedMap;
 import com.scrivenvar.preferences.UserPreferences;
+import com.scrivenvar.processors.r.REnginePool;
+import com.scrivenvar.processors.r.RStatement;
 import com.scrivenvar.service.Options;
 import com.scrivenvar.service.events.Notifier;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.StringProperty;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.scrivenvar.Constants.STATUS_PARSE_ERROR;
+import static com.scrivenvar.Constants.STATUS_R_TIMEOUT;
 import static com.scrivenvar.Messages.get;
 import static com.scrivenvar.sigils.RSigilOperator.PREFIX;
 import static com.scrivenvar.sigils.RSigilOperator.SUFFIX;
 import static com.scrivenvar.processors.text.TextReplacementFactory.replace;
 import static java.lang.Math.min;
 import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * Transforms a document containing R statements into Markdown.
@@ -65,26 +78,126 @@ public final class InlineRProcessor extends DefinitionProcessor {
   private static final int MAX_CACHED_R_STATEMENTS = 512;
 
   /**
-   * Where to put document inline evaluated R expressions.
+   * Where to put document inline evaluated R expressions. Each result is
+   * valid until the engines are bootstrapped again or until a definition
+   * that the expression reads at run-time changes.
    */
-  private final Map<String, Object> mEvalCache = new LinkedHashMap<>() {
+  private final Map<String, Evaluation> mEvalCache = new LinkedHashMap<>() {
     @Override
     protected boolean removeEldestEntry(
-        final Map.Entry<String, Object> eldest ) {
+        final Map.Entry<String, Evaluation> eldest ) {
       return size() > MAX_CACHED_R_STATEMENTS;
     }
   };
 
   /**
-   * Only one editor is open at a time.
+   * Shared by all editors, so that R is initialised only once.
    */
-  private static final ScriptEngine ENGINE =
-      (new ScriptEngineManager()).getEngineByName( "Renjin" );
+  private static final REnginePool POOL = new REnginePool();
+
+  /**
+   * Marks statements that could not be evaluated.
+   */
+  private static final Object FAILED = new Object();
+
+  /**
+   * Marks statements that were not evaluated within their time budget.
+   */
+  private static final Object TIMED_OUT = new Object();
+
+  /**
+   * Maximum time to evaluate a single R statement, in milliseconds.
+   */
+  private static final long EXPRESSION_BUDGET = 2_000;
+
+  /**
+   * Maximum time to evaluate all R statements in a document, in
+   * milliseconds. Statements left unevaluated are rendered verbatim.
+   */
+  private static final long RENDER_BUDGET = 5_000;
+
+  /**
+   * Number of expensive expressions listed when a statement times out.
+   */
+  private static final int SLOWEST_COUNT = 3;
+
+  /**
+   * Statements that ran for their entire time budget, which are not
+   * evaluated again until R is re-initialised or the processor is recreated.
+   */
+  private final Set<String> mTimeouts = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Worker evaluations that were still queued or running when their render
+   * ran out of time, keyed by expression. The next render waits for them
+   * instead of evaluating the expressions again. Only accessed from the
+   * rendering thread.
+   */
+  private final Map<String, Evaluation> mInFlight = new HashMap<>();
 
   private static final int PREFIX_LENGTH = PREFIX.length();
 
   private final AtomicBoolean mDirty = new AtomicBoolean( false );
 
+  /**
+   * The bootstrap script, with definitions substituted, that was last
+   * evaluated, or {@code null} if R must be initialised by the next render.
+   */
+  private volatile String mBootstrap;
+
+  /**
+   * Version of the definitions used to create {@link #mBootstrap}.
+   */
+  private volatile long mBootstrapVersion;
+
+  /**
+   * Associates the result of evaluating an R expression with the state it
+   * was computed from.
+   */
+  private static final class Evaluation {
+    private final long mGeneration;
+    private final String[] mKeys;
+    private final long[] mVersions;
+    private Object mResult;
+
+    /**
+     * The pending result of a worker evaluation.
+     */
+    private Future<Object> mFuture;
+
+    /**
+     * Records the state that the given statement depends upon, prior to
+     * its evaluation.
+     */
+    private Evaluation(
+        final RStatement statement, final ResolvedMap map,
+        final long generation ) {
+      final var keys = statement.getVariables();
+
+      mGeneration = generation;
+      mKeys = keys.toArray( new String[ 0 ] );
+      mVersions = new long[ mKeys.length ];
+
+      for( int i = 0; i < mKeys.length; i++ ) {
+        mVersions[ i ] = map.getVersion( mKeys[ i ] );
+      }
+    }
+
+    private boolean isCurrent( final ResolvedMap map, final long generation ) {
+      if( mGeneration != generation ) {
+        return false;
+      }
+
+      for( int i = 0; i < mKeys.length; i++ ) {
+        if( mVersions[ i ] != map.getVersion( mKeys[ i ] ) ) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+
   /**
    * Constructs a processor capable of evaluating R statements.
    *
@@ -93,7 +206,7 @@ public final class InlineRProcessor extends DefinitionProcessor {
    */
   public InlineRProcessor(
       final Processor<String> processor,
-      final Map<String, String> map ) {
+      final ResolvedMap map ) {
     super( processor, map );
 
     bootstrapScriptProperty().addListener(
@@ -101,40 +214,87 @@ public final class InlineRProcessor extends DefinitionProcessor {
     workingDirectoryProperty().addListener(
         ( ob, oldScript, newScript ) -> setDirty( true ) );
 
+    // The bootstrap script can take a while, so rather than evaluate it on
+    // the JavaFX thread, the next render re-initialises R.
     getUserPreferences().addSaveEventHandler( ( handler ) -> {
       if( isDirty() ) {
-        init();
+        mBootstrap = null;
         setDirty( false );
       }
     } );
-
-    init();
   }
 
   /**
-   * Initialises the R code so that R can find imported libraries. Note that
-   * any existing R functionality will not be overwritten if this method is
-   * called multiple times.
+   * Initialises the R code so that R can find imported libraries. The
+   * bootstrap script is only evaluated when it or the working directory has
+   * changed; otherwise, R's environment is restored to the state it had
+   * immediately after the script was last evaluated.
    */
   private void init() {
     getNotifier().clear();
 
     try {
-      final var bootstrap = getBootstrapScript();
+      mTimeouts.clear();
+      mBootstrapVersion = getResolvedMap().getVersion();
+      mBootstrap = createBootstrap();
 
-      if( !bootstrap.isBlank() ) {
-        final var wd = getWorkingDirectory();
-        final var dir = wd.toString().replace( '\\', '/' );
-        final var map = getDefinitions();
-        map.put( "$application.r.working.directory$", dir );
-
-        eval( replace( bootstrap, map ) );
-      }
+      getEnginePool().bootstrap( mBootstrap, getDirectory() );
     } catch( final Exception ex ) {
       getNotifier().notify( ex );
     }
   }
 
+  /**
+   * Initialises R upon the first render, which keeps the bootstrap script
+   * off the thread that creates the processor. Afterwards, re-initialises R
+   * only if the definitions have changed such that the bootstrap script
+   * differs from the script last evaluated. Changes to definitions that the
+   * script doesn't use leave the R environment, and the cached results,
+   * intact.
+   */
+  private void update() {
+    final var version = getResolvedMap().getVersion();
+
+    if( mBootstrap == null ) {
+      init();
+    }
+    else if( version != mBootstrapVersion ) {
+      mBootstrapVersion = version;
+
+      if( !createBootstrap().equals( mBootstrap ) ) {
+        init();
+      }
+    }
+  }
+
+  /**
+   * Substitutes the definitions and working directory into the bootstrap
+   * script.
+   *
+   * @return The R code to evaluate, possibly empty.
+   */
+  private String createBootstrap() {
+    final var bootstrap = getBootstrapScript();
+
+    if( bootstrap.isBlank() ) {
+      return "";
+    }
+
+    final var map = new HashMap<>( getDefinitions() );
+    map.put( "$application.r.working.directory$", getDirectory() );
+
+    return replace( bootstrap, map );
+  }
+
+  /**
+   * Returns the working directory in the form that R expects.
+   *
+   * @return The working directory path, using forward slashes.
+   */
+  private String getDirectory() {
+    return getWorkingDirectory().toString().replace( '\\', '/' );
+  }
+
   /**
    * Sets the dirty flag to indicate that the bootstrap script or working
    * directory has been modified. Upon saving the preferences, if this flag
@@ -157,7 +317,9 @@ public final class InlineRProcessor extends DefinitionProcessor {
 
   /**
    * Evaluates all R statements in the source document and inserts the
-   * calculated value into the generated document.
+   * calculated value into the generated document. Statements that neither
+   * change the R environment nor depend on such changes are evaluated
+   * concurrently; all other statements are evaluated in document order.
    *
    * @param text The document text that includes variables that should be
    *             replaced with values when rendered as HTML.
@@ -167,80 +329,303 @@ public final class InlineRProcessor extends DefinitionProcessor {
   @Override
   public String apply( final String text ) {
     getNotifier().clear();
+    update();
+
+    final var allotted = MILLISECONDS.toNanos( RENDER_BUDGET );
+    final var deadline = System.nanoTime() + allotted;
+    final var statements = parse( text );
+    final int count = statements.size();
+    final var results = new Object[ count ];
+    final var pending = new HashMap<Integer, Evaluation>();
+    final var inFlight = new HashMap<>( mInFlight );
+    final var changed = new HashSet<String>();
+
+    mInFlight.clear();
+
+    for( final var statement : statements ) {
+      if( statement.isStateful() ) {
+        statement.addReferences( changed );
+      }
+    }
 
-    final int length = text.length();
+    boolean barrier = false;
 
-    // The * 2 is a wild guess at the ratio of R statements to the length
-    // of text produced by those statements.
-    final StringBuilder sb = new StringBuilder( length * 2 );
+    for( int i = 0; i < count; i++ ) {
+      final var statement = statements.get( i );
+      final var r = statement.getExpression();
+
+      barrier |= statement.isBarrier();
+      results[ i ] = mTimeouts.contains( r ) ? TIMED_OUT : lookup( statement );
+
+      if( results[ i ] == null && !barrier && !statement.isStateful() &&
+          !statement.refersTo( changed ) ) {
+        pending.put( i, evalLater( statement, inFlight.remove( r ) ) );
+      }
+    }
 
+    // Stop evaluating statements that are no longer in the document.
+    for( final var evaluation : inFlight.values() ) {
+      evaluation.mFuture.cancel( true );
+    }
+
+    // Evaluate dependent statements while the independent ones run. Once
+    // a statement times out, R's environment is reset, so statements that
+    // follow it cannot be evaluated until the next render.
+    boolean abandoned = false;
+
+    for( int i = 0; i < count; i++ ) {
+      if( results[ i ] == null && !pending.containsKey( i ) ) {
+        results[ i ] = abandoned
+            ? TIMED_OUT
+            : evalText( statements.get( i ), deadline );
+        abandoned = results[ i ] == TIMED_OUT;
+      }
+    }
+
+    for( final var entry : pending.entrySet() ) {
+      final int i = entry.getKey();
+      final var statement = statements.get( i );
+      final var evaluation = entry.getValue();
+      final var future = evaluation.mFuture;
+
+      try {
+        final var result =
+            REnginePool.await( future, EXPRESSION_BUDGET, deadline );
+        cache( statement, evaluation, result );
+        results[ i ] = result;
+      } catch( final TimeoutException ex ) {
+        if( !future.isCancelled() ) {
+          // The render ran out of time; the next render collects the result.
+          mInFlight.put( statement.getExpression(), evaluation );
+          results[ i ] = TIMED_OUT;
+        }
+        else {
+          // Only give up on statements that ran for their entire budget.
+          results[ i ] = REnginePool.hasStarted( future )
+              ? timeout( statement, EXPRESSION_BUDGET )
+              : TIMED_OUT;
+        }
+      } catch( final Exception ex ) {
+        // Defer to the primary engine, which reports errors consistently.
+        results[ i ] = evalText( statement, deadline );
+      }
+    }
+
+    // Size the buffer exactly, because documents can be large enough that
+    // growing (or over-allocating) the buffer dominates the memory used.
+    final var values = new String[ count ];
+    int length = text.length();
+
+    for( int i = 0; i < count; i++ ) {
+      final var statement = statements.get( i );
+
+      // If the string couldn't be parsed using R, append the statement
+      // that failed to parse, instead of its evaluated value.
+      values[ i ] = results[ i ] == FAILED || results[ i ] == TIMED_OUT
+          ? text.substring( statement.getBegan(), statement.getEnded() )
+          : String.valueOf( results[ i ] );
+      length += values[ i ].length() - statement.getEnded() +
+          statement.getBegan();
+    }
+
+    final StringBuilder sb = new StringBuilder( length );
     int prevIndex = 0;
-    int currIndex = text.indexOf( PREFIX );
 
-    while( currIndex >= 0 ) {
+    for( int i = 0; i < count; i++ ) {
+      final var statement = statements.get( i );
+
       // Copy everything up to, but not including, an R statement (`r#).
-      sb.append( text, prevIndex, currIndex );
-
-      // Jump to the start of the R statement.
-      prevIndex = currIndex + PREFIX_LENGTH;
-
-      // Find the statement ending (`), without indexing past the text boundary.
-      currIndex = text.indexOf( SUFFIX, min( currIndex + 1, length ) );
-
-      // Only evaluate inline R statements that have end delimiters.
-      if( currIndex > 1 ) {
-        // Extract the inline R statement to be evaluated.
-        final String r = text.substring( prevIndex, currIndex );
-
-        // Pass the R statement into the R engine for evaluation.
-        try {
-          final Object result = evalText( r );
-
-          // Append the string representation of the result into the text.
-          sb.append( result );
-        } catch( final Exception e ) {
-          // If the string couldn't be parsed using R, append the statement
-          // that failed to parse, instead of its evaluated value.
-          sb.append( PREFIX ).append( r ).append( SUFFIX );
-
-          // Tell the user that there was a problem.
-          getNotifier().notify(
-              get( STATUS_PARSE_ERROR, e.getMessage(), currIndex )
-          );
-        }
+      sb.append( text, prevIndex, statement.getBegan() );
 
-        // Retain the R statement's ending position in the text.
-        prevIndex = currIndex + 1;
-      }
+      // Append the string representation of the result into the text.
+      sb.append( values[ i ] );
 
-      // Find the start of the next inline R statement.
-      currIndex = text.indexOf( PREFIX, min( currIndex + 1, length ) );
+      // Retain the R statement's ending position in the text.
+      prevIndex = statement.getEnded();
     }
 
     // Copy from the previous index to the end of the string.
-    return sb.append( text.substring( min( prevIndex, length ) ) ).toString();
+    return sb.append( text, prevIndex, text.length() ).toString();
+  }
+
+  /**
+   * Finds all inline R statements that have end delimiters. Scanning stops
+   * at the first unterminated statement, which remains literal text.
+   *
+   * @param text The document text to scan for R statements.
+   * @return The R statements in document order.
+   */
+  private List<RStatement> parse( final String text ) {
+    final var statements = new ArrayList<RStatement>();
+    int began = text.indexOf( PREFIX );
+
+    while( began >= 0 ) {
+      final int ended = text.indexOf( SUFFIX, began + PREFIX_LENGTH );
+
+      if( ended < 0 ) {
+        break;
+      }
+
+      statements.add( new RStatement(
+          text.substring( began + PREFIX_LENGTH, ended ), began, ended + 1 ) );
+
+      began = text.indexOf( PREFIX, ended + 1 );
+    }
+
+    return statements;
   }
 
   /**
    * Look up an R expression from the cache then return the resulting object.
    * If the R expression hasn't been cached, it'll first be evaluated.
    *
-   * @param r The expression to evaluate.
-   * @return The object resulting from the evaluation.
+   * @param statement The expression to evaluate.
+   * @param deadline  When the render's time budget expires, in nanoseconds.
+   * @return The object resulting from the evaluation, or {@link #FAILED}
+   * or {@link #TIMED_OUT}.
    */
-  private Object evalText( final String r ) {
-    return mEvalCache.computeIfAbsent( r, v -> eval( r ) );
+  private Object evalText( final RStatement statement, final long deadline ) {
+    final var cached = lookup( statement );
+
+    if( cached != null ) {
+      return cached;
+    }
+
+    final var budget = getBudget( deadline );
+
+    if( budget <= 0 ) {
+      return TIMED_OUT;
+    }
+
+    try {
+      final var evaluation = createEvaluation( statement );
+      final var result = eval( statement.getExpression(), budget );
+      cache( statement, evaluation, result );
+
+      return result;
+    } catch( final TimeoutException e ) {
+      return timeout( statement, budget );
+    } catch( final Exception e ) {
+      // Tell the user that there was a problem.
+      getNotifier().notify(
+          get( STATUS_PARSE_ERROR, e.getMessage(), statement.getBegan() )
+      );
+    }
+
+    return FAILED;
+  }
+
+  /**
+   * Returns the cached result for the given statement, provided neither the
+   * R environment nor any definitions it reads have changed since it was
+   * evaluated.
+   *
+   * @param statement The statement to look up.
+   * @return The cached result, or {@code null} if it must be evaluated.
+   */
+  private Object lookup( final RStatement statement ) {
+    final var evaluation = mEvalCache.get( statement.getExpression() );
+    final var generation = getEnginePool().getGeneration();
+
+    return evaluation != null &&
+        evaluation.isCurrent( getResolvedMap(), generation )
+        ? evaluation.mResult
+        : null;
+  }
+
+  /**
+   * Starts evaluating the given statement on a worker engine, unless the
+   * given evaluation from a previous render is still current.
+   *
+   * @param statement The statement to evaluate.
+   * @param previous  The statement's unfinished evaluation from a previous
+   *                  render, or {@code null}.
+   * @return The pending evaluation.
+   */
+  private Evaluation evalLater(
+      final RStatement statement, final Evaluation previous ) {
+    final var generation = getEnginePool().getGeneration();
+
+    if( previous != null ) {
+      if( previous.isCurrent( getResolvedMap(), generation ) ) {
+        return previous;
+      }
+
+      previous.mFuture.cancel( true );
+    }
+
+    final var evaluation = createEvaluation( statement );
+    evaluation.mFuture = getEnginePool().evalLater( statement.getExpression() );
+
+    return evaluation;
+  }
+
+  private Evaluation createEvaluation( final RStatement statement ) {
+    return new Evaluation(
+        statement, getResolvedMap(), getEnginePool().getGeneration() );
+  }
+
+  private void cache(
+      final RStatement statement, final Evaluation evaluation,
+      final Object result ) {
+    evaluation.mResult = result;
+    mEvalCache.put( statement.getExpression(), evaluation );
+  }
+
+  /**
+   * Returns the time available to evaluate the next statement.
+   *
+   * @param deadline When the render's time budget expires, in nanoseconds.
+   * @return The lesser of the statement's budget and the remaining render
+   * budget, in milliseconds.
+   */
+  private long getBudget( final long deadline ) {
+    final var remaining = NANOSECONDS.toMillis( deadline - System.nanoTime() );
+    return min( EXPRESSION_BUDGET, remaining );
+  }
+
+  /**
+   * Tells the user that a statement took too long to evaluate. If the
+   * statement had its entire budget, it is not evaluated again; otherwise,
+   * the render ran out of time and the statement is retried next render.
+   *
+   * @param statement The statement that exceeded its budget.
+   * @param budget    The time it was given, in milliseconds.
+   * @return {@link #TIMED_OUT}
+   */
+  private Object timeout( final RStatement statement, final long budget ) {
+    if( budget >= EXPRESSION_BUDGET ) {
+      mTimeouts.add( statement.getExpression() );
+    }
+
+    final var slowest = new StringJoiner( ", " );
+
+    for( final var cost : getEnginePool().getSlowest( SLOWEST_COUNT ) ) {
+      final var r = cost.getKey();
+      slowest.add( format( "[%s...] %d ms",
+                           r.substring( 0, min( r.length(), 30 ) ),
+                           cost.getValue() ) );
+    }
+
+    getNotifier().notify(
+        get( STATUS_R_TIMEOUT, budget, statement.getBegan(), slowest )
+    );
+
+    return TIMED_OUT;
   }
 
   /**
    * Evaluate an R expression and return the resulting object.
    *
-   * @param r The expression to evaluate.
+   * @param r       The expression to evaluate.
+   * @param timeout Maximum time to wait for the result, in milliseconds.
    * @return The object resulting from the evaluation.
+   * @throws TimeoutException The expression exceeded its time budget.
    */
-  private Object eval( final String r ) {
+  private Object eval( final String r, final long timeout )
+      throws TimeoutException {
     try {
-      return getScriptEngine().eval( r );
+      return getEnginePool().eval( r, timeout );
     } catch( final ScriptException ex ) {
       final String expr = r.substring( 0, min( r.length(), 30 ) );
       final String msg = format(
@@ -282,8 +667,8 @@ public final class InlineRProcessor extends DefinitionProcessor {
     return sOptions.getUserPreferences();
   }
 
-  private ScriptEngine getScriptEngine() {
-    return ENGINE;
+  private REnginePool getEnginePool() {
+    return POOL;
   }
 
   private Notifier getNotifier() {
@@ -29,12 +29,12 @@ package com.scrivenvar.processors;
 
 import com.scrivenvar.AbstractFileFactory;
 import com.scrivenvar.FileEditorTab;
+import com.scrivenvar.definition.ResolvedMap;
 import com.scrivenvar.preview.HTMLPreviewPane;
+import com.scrivenvar.processors.markdown.MarkdownDocument;
+import com.scrivenvar.processors.markdown.MarkdownPreviewProcessor;
 import com.scrivenvar.processors.markdown.MarkdownProcessor;
 
-import java.nio.file.Path;
-import java.util.Map;
-
 /**
  * Responsible for creating processors capable of parsing, transforming,
  * interpolating, and rendering known file types.
@@ -42,8 +42,7 @@ import java.util.Map;
 public class ProcessorFactory extends AbstractFileFactory {
 
   private final HTMLPreviewPane mPreviewPane;
-  private final Map<String, String> mResolvedMap;
-  private final Processor<String> mMarkdownProcessor;
+  private final ResolvedMap mResolvedMap;
 
   /**
    * Constructs a factory with the ability to create processors that can perform
@@ -54,10 +53,9 @@ public class ProcessorFactory extends AbstractFileFactory {
    */
   public ProcessorFactory(
       final HTMLPreviewPane previewPane,
-      final Map<String, String> resolvedMap ) {
+      final ResolvedMap resolvedMap ) {
     mPreviewPane = previewPane;
     mResolvedMap = resolvedMap;
-    mMarkdownProcessor = createMarkdownProcessor();
   }
 
   /**
@@ -68,12 +66,34 @@ public class ProcessorFactory extends AbstractFileFactory {
    * @return A processor that can render the given tab's text.
    */
   public Processor<String> createProcessors( final FileEditorTab tab ) {
+    return createProcessors(
+        tab, createMarkdownProcessor( tab ), createHTMLPreviewProcessor() );
+  }
+
+  /**
+   * Creates a processor chain suitable for parsing the file opened at the
+   * given tab and rendering it as HTML, without updating the preview. The
+   * last processor in the chain returns the HTML document.
+   *
+   * @param tab The tab containing a text editor, path, and caret position.
+   * @return A processor that can convert the given tab's text to HTML.
+   */
+  public Processor<String> createExportProcessors( final FileEditorTab tab ) {
+    final var mp = new MarkdownProcessor(
+        null, getPreviewPane().getPath(), getDocument( tab ) );
+    return createProcessors( tab, mp, null );
+  }
+
+  private Processor<String> createProcessors(
+      final FileEditorTab tab,
+      final Processor<String> tpc,
+      final Processor<String> hpp ) {
     return switch( lookup( tab.getPath() ) ) {
-      case RMARKDOWN -> createRProcessor();
-      case SOURCE -> createMarkdownDefinitionProcessor();
-      case XML -> createXMLProcessor( tab );
-      case RXML -> createRXMLProcessor( tab );
-      default -> createIdentityProcessor();
+      case RMARKDOWN -> createRProcessor( tpc );
+      case SOURCE -> createMarkdownDefinitionProcessor( tpc );
+      case XML -> createXMLProcessor( tpc, tab );
+      case RXML -> createRXMLProcessor( tpc, tab );
+      default -> createIdentityProcessor( hpp );
     };
   }
 
@@ -82,17 +102,24 @@ public class ProcessorFactory extends AbstractFileFactory {
   }
 
   /**
-   * Creates and links the processors at the end of the processing chain.
+   * Creates the processor at the end of the processing chain, which renders
+   * the document directly into the preview pane.
    *
-   * @return A markdown, caret replacement, and preview pane processor chain.
+   * @param tab The tab whose document model parses the Markdown.
+   * @return A markdown and preview pane processor.
    */
-  private Processor<String> createMarkdownProcessor() {
-    final var hpp = createHTMLPreviewProcessor();
-    return new MarkdownProcessor( hpp, getPreviewPane().getPath() );
+  private Processor<String> createMarkdownProcessor( final FileEditorTab tab ) {
+    final var pane = getPreviewPane();
+    return new MarkdownPreviewProcessor(
+        pane, pane.getPath(), getDocument( tab ) );
+  }
+
+  private MarkdownDocument getDocument( final FileEditorTab tab ) {
+    return tab.getEditorPane().getDocument();
   }
 
-  protected Processor<String> createIdentityProcessor() {
-    final var hpp = createHTMLPreviewProcessor();
+  protected Processor<String> createIdentityProcessor(
+      final Processor<String> hpp ) {
     return new IdentityProcessor( hpp );
   }
 
@@ -101,25 +128,25 @@ public class ProcessorFactory extends AbstractFileFactory {
     return new DefinitionProcessor( p, getResolvedMap() );
   }
 
-  protected Processor<String> createMarkdownDefinitionProcessor() {
-    final var tpc = getCommonProcessor();
+  protected Processor<String> createMarkdownDefinitionProcessor(
+      final Processor<String> tpc ) {
     return createDefinitionProcessor( tpc );
   }
 
-  protected Processor<String> createXMLProcessor( final FileEditorTab tab ) {
-    final var tpc = getCommonProcessor();
+  protected Processor<String> createXMLProcessor(
+      final Processor<String> tpc, final FileEditorTab tab ) {
     final var xmlp = new XmlProcessor( tpc, tab.getPath() );
     return createDefinitionProcessor( xmlp );
   }
 
-  protected Processor<String> createRProcessor() {
-    final var tpc = getCommonProcessor();
+  protected Processor<String> createRProcessor(
+      final Processor<String> tpc ) {
     final var rp = new InlineRProcessor( tpc, getResolvedMap() );
     return new RVariableProcessor( rp, getResolvedMap() );
   }
 
-  protected Processor<String> createRXMLProcessor( final FileEditorTab tab ) {
-    final var tpc = getCommonProcessor();
+  protected Processor<String> createRXMLProcessor(
+      final Processor<String> tpc, final FileEditorTab tab ) {
     final var xmlp = new XmlProcessor( tpc, tab.getPath() );
     final var rp = new InlineRProcessor( xmlp, getResolvedMap() );
     return new RVariableProcessor( rp, getResolvedMap() );
@@ -134,17 +161,7 @@ public class ProcessorFactory extends AbstractFileFactory {
    *
    * @return A map to help dereference variables.
    */
-  private Map<String, String> getResolvedMap() {
+  private ResolvedMap getResolvedMap() {
     return mResolvedMap;
   }
-
-  /**
-   * Returns a processor common to all processors: markdown, caret position
-   * token replacer, and an HTML preview renderer.
-   *
-   * @return Processors at the end of the processing chain.
-   */
-  private Processor<String> getCommonProcessor() {
-    return mMarkdownProcessor;
-  }
 }
@@ -27,9 +27,15 @@
  */
 package com.scrivenvar.processors;
 
+import com.scrivenvar.definition.ResolvedMap;
+import com.scrivenvar.processors.text.RSigilReplacer;
+import com.scrivenvar.processors.text.TextReplacer;
+
 import java.util.HashMap;
 import java.util.Map;
 
+import static java.util.Collections.unmodifiableMap;
+
 /**
  * Converts the keys of the resolved map from default form to R form, then
  * performs a substitution on the text. The default R variable syntax is
@@ -38,18 +44,31 @@ import java.util.Map;
 public class RVariableProcessor extends DefinitionProcessor {
 
   public RVariableProcessor(
-      final Processor<String> rp, final Map<String, String> map ) {
+      final Processor<String> rp, final ResolvedMap map ) {
     super( rp, map );
   }
 
   /**
-   * Returns the R-based version of the interpolated variable definitions.
+   * Creates a replacer that scans the text for R variables.
+   *
+   * @return A replacer for variables having the R syntax.
+   */
+  @Override
+  protected TextReplacer createTextReplacer() {
+    return new RSigilReplacer();
+  }
+
+  /**
+   * Returns the R-based version of the interpolated variable definitions. The
+   * R definitions are converted once per version of the resolved map, then
+   * shared by all R processors until the definitions change.
    *
    * @return Variable names transmogrified from the default syntax to R syntax.
    */
   @Override
   protected Map<String, String> getDefinitions() {
-    return toR( super.getDefinitions() );
+    return getResolvedMap().derive(
+        RVariableProcessor.class, RVariableProcessor::toR );
   }
 
   /**
@@ -58,7 +77,7 @@ public class RVariableProcessor extends DefinitionProcessor {
    * @param map Map of variable names to values.
    * @return Map of R variables.
    */
-  private Map<String, String> toR( final Map<String, String> map ) {
+  private static Map<String, String> toR( final Map<String, String> map ) {
     final Map<String, String> rMap = new HashMap<>( map.size() );
 
     for( final Map.Entry<String, String> entry : map.entrySet() ) {
@@ -66,7 +85,7 @@ public class RVariableProcessor extends DefinitionProcessor {
       rMap.put( toRKey( key ), toRValue( map.get( key ) ) );
     }
 
-    return rMap;
+    return unmodifiableMap( rMap );
   }
 
   /**
@@ -76,7 +95,7 @@ public class RVariableProcessor extends DefinitionProcessor {
    * @param key The variable name to transform, can be empty but not null.
    * @return The transformed variable name.
    */
-  private String toRKey( final String key ) {
+  private static String toRKey( final String key ) {
     // Replace all the periods with dollar symbols.
     final StringBuilder sb = new StringBuilder( 'v' + key );
     final int length = sb.length();
@@ -95,7 +114,7 @@ public class RVariableProcessor extends DefinitionProcessor {
     return sb.toString();
   }
 
-  private String toRValue( final String value ) {
+  private static String toRValue( final String value ) {
     return '\'' + escape( value, '\'', "\\'" ) + '\'';
   }
 
@@ -108,7 +127,7 @@ public class RVariableProcessor extends DefinitionProcessor {
    * @return The haystack with the all instances of needle replaced with thread.
    */
   @SuppressWarnings("SameParameterValue")
-  private String escape(
+  private static String escape(
       final String haystack, final char needle, final String thread ) {
     int end = haystack.indexOf( needle );
 
@@ -41,12 +41,26 @@ import javax.xml.transform.*;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.File;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.Files.readAttributes;
+import static java.util.Collections.synchronizedMap;
 import static net.sf.saxon.tree.util.ProcInstParser.getPseudoAttribute;
 
 /**
@@ -63,11 +77,74 @@ import static net.sf.saxon.tree.util.ProcInstParser.getPseudoAttribute;
 public class XmlProcessor extends AbstractProcessor<String>
     implements ErrorListener {
 
+  /**
+   * Compiled stylesheets shared by all processors, keyed by canonical path.
+   * Processors are recreated whenever any watched file changes, but a
+   * stylesheet is only recompiled when its own file changes.
+   */
+  private static final Map<Path, Stylesheet> STYLESHEETS =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Number of transformation results retained per document.
+   */
+  private static final int MAX_CACHED_RESULTS = 4;
+
+  /**
+   * Number of documents whose transformation results are retained, which
+   * releases the results of documents that are no longer open.
+   */
+  private static final int MAX_CACHED_DOCUMENTS = 16;
+
+  /**
+   * Recent transformation results for recently transformed documents, which
+   * avoids re-transforming unchanged documents (e.g., when switching tabs).
+   */
+  private static final Map<Path, Map<String, String>> RESULTS =
+      synchronizedMap( new LinkedHashMap<>(
+          MAX_CACHED_DOCUMENTS + 1, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<Path, Map<String, String>> eldest ) {
+          return size() > MAX_CACHED_DOCUMENTS;
+        }
+      } );
+
+  private static final String STYLESHEET_TARGET = "xml-stylesheet";
+
+  /**
+   * Longest prologue to search for the stylesheet processing instruction.
+   */
+  private static final int MAX_PROLOGUE_LENGTH = 8192;
+
+  /**
+   * Number of characters digested at a time.
+   */
+  private static final int DIGEST_CHARS = 8192;
+
+  /**
+   * Distinguishes each compiled stylesheet from its predecessors.
+   */
+  private static final AtomicLong VERSIONS = new AtomicLong();
+
+  /**
+   * Compiles the shared stylesheets. Compiled stylesheets may retain the
+   * factory's error listener, so the listener must not refer to any one
+   * processor, which would keep it (and its document) alive.
+   */
+  private static final TransformerFactory TRANSFORMER_FACTORY =
+      createTransformerFactory();
+
   private final Snitch snitch = Services.load( Snitch.class );
 
   private XMLInputFactory xmlInputFactory;
-  private TransformerFactory transformerFactory;
-  private Transformer transformer;
+
+  /**
+   * The document text up to the end of its stylesheet processing
+   * instruction, which was last found to reference {@link #href}.
+   */
+  private String prologue;
+  private String href;
 
   private Path path;
 
@@ -113,55 +190,135 @@ public class XmlProcessor extends AbstractProcessor<String>
     final String template = getXsltFilename( text );
     final Path xsl = getXslPath( template );
 
+    // Listen for external file modification events.
+    getSnitch().listen( xsl );
+
+    final Stylesheet stylesheet = getStylesheet( xsl );
+    final Map<String, String> results = getResults();
+    final String key = stylesheet.version + ":" + digest( text );
+    final String cached = results.get( key );
+
+    if( cached != null ) {
+      return cached;
+    }
+
     try(
         final StringWriter output = new StringWriter( text.length() );
         final StringReader input = new StringReader( text ) ) {
 
-      // Listen for external file modification events.
-      getSnitch().listen( xsl );
-
-      getTransformer( xsl ).transform(
+      getTransformer( stylesheet ).transform(
           new StreamSource( input ),
           new StreamResult( output )
       );
 
-      return output.toString();
+      final String result = output.toString();
+      results.put( key, result );
+
+      return result;
     }
   }
 
   /**
    * Returns an XSL transformer ready to transform an XML document using the
-   * XSLT file specified by the given path. If the path is already known then
-   * this will return the associated transformer.
+   * given compiled stylesheet. Transformers are cheap to create from a
+   * compiled stylesheet, but are not thread-safe, so each transformation has
+   * its own.
    *
-   * @param xsl The path to an XSLT file.
+   * @param stylesheet The compiled XSLT file.
    * @return A transformer that will transform XML documents using the given
    * XSLT file.
    * @throws TransformerConfigurationException Could not instantiate the
    *                                           transformer.
    */
-  private Transformer getTransformer( final Path xsl )
+  private Transformer getTransformer( final Stylesheet stylesheet )
       throws TransformerConfigurationException {
-    if( this.transformer == null ) {
-      this.transformer = createTransformer( xsl );
+    final Transformer transformer = stylesheet.templates.newTransformer();
+    transformer.setErrorListener( this );
+
+    return transformer;
+  }
+
+  /**
+   * Returns the most recent transformation results for this processor's
+   * document, which outlive the processor.
+   *
+   * @return Transformed documents keyed by stylesheet version and XML
+   * content digest.
+   */
+  private Map<String, String> getResults() {
+    return RESULTS.computeIfAbsent( getPath(), path -> synchronizedMap(
+        new LinkedHashMap<>( MAX_CACHED_RESULTS + 1, 0.75f, true ) {
+          @Override
+          protected boolean removeEldestEntry(
+              final Map.Entry<String, String> eldest ) {
+            return size() > MAX_CACHED_RESULTS;
+          }
+        } ) );
+  }
+
+  /**
+   * Computes a digest of the given text, which is short enough to retain
+   * for several versions of large documents. The text is digested through a
+   * small buffer, rather than being copied into an array of bytes.
+   *
+   * @param text The text to digest.
+   * @return The SHA-256 digest of the text, Base64-encoded.
+   */
+  private static String digest( final String text )
+      throws NoSuchAlgorithmException {
+    final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+    final ByteBuffer bytes = ByteBuffer.allocate( DIGEST_CHARS * 2 );
+    final CharBuffer chars = bytes.asCharBuffer();
+    final int length = text.length();
+
+    for( int i = 0; i < length; i += DIGEST_CHARS ) {
+      final int count = Math.min( DIGEST_CHARS, length - i );
+
+      chars.clear();
+      chars.put( text, i, i + count );
+      bytes.clear().limit( count * 2 );
+      digest.update( bytes );
     }
 
-    return this.transformer;
+    return Base64.getEncoder().encodeToString( digest.digest() );
   }
 
   /**
-   * Creates a configured transformer ready to run.
+   * Returns the compiled form of the given stylesheet, compiling it only if
+   * it hasn't been compiled since it was last modified.
    *
-   * @param xsl The stylesheet to use for transforming XML documents.
-   * @return The edited XML document transformed into another format (usually
-   * markdown).
-   * @throws TransformerConfigurationException Could not create the transformer.
+   * @param xsl The path to an XSLT file.
+   * @return The compiled stylesheet.
+   * @throws TransformerConfigurationException Could not compile the
+   *                                           stylesheet.
    */
-  protected Transformer createTransformer( final Path xsl )
+  private Stylesheet getStylesheet( final Path xsl )
       throws TransformerConfigurationException {
-    final Source xslt = new StreamSource( xsl.toFile() );
+    try {
+      final Path key = xsl.toRealPath();
+      final BasicFileAttributes attributes =
+          readAttributes( key, BasicFileAttributes.class );
+      final Stylesheet cached = STYLESHEETS.get( key );
+
+      if( cached != null && cached.isCurrent( attributes ) ) {
+        return cached;
+      }
+
+      final Source xslt = new StreamSource( key.toFile() );
+      final Templates templates;
+
+      synchronized( TRANSFORMER_FACTORY ) {
+        templates = TRANSFORMER_FACTORY.newTemplates( xslt );
+      }
+
+      final Stylesheet stylesheet = new Stylesheet( templates, attributes );
 
-    return getTransformerFactory().newTransformer( xslt );
+      STYLESHEETS.put( key, stylesheet );
+
+      return stylesheet;
+    } catch( final IOException ex ) {
+      throw new TransformerConfigurationException( ex );
+    }
   }
 
   private Path getXslPath( final String filename ) {
@@ -171,6 +328,133 @@ public class XmlProcessor extends AbstractProcessor<String>
     return Paths.get( xmlDirectory.getPath(), filename );
   }
 
+  /**
+   * Returns the href pseudo-attribute of the given XML text's stylesheet
+   * processing instruction. The text leading up to, and including, the
+   * instruction is retained so that subsequent calls need only confirm that
+   * the document still begins with the same prologue.
+   *
+   * @param xml The XML containing an xml-stylesheet processing instruction.
+   * @return The href pseudo-attribute value.
+   * @throws XMLStreamException Could not parse the XML file.
+   */
+  private String getXsltFilename( final String xml )
+      throws XMLStreamException, XPathException {
+    if( this.prologue != null && xml.startsWith( this.prologue ) ) {
+      return this.href;
+    }
+
+    int ended = scanPrologue( xml );
+    final String result;
+
+    if( ended > 0 ) {
+      final int began = xml.lastIndexOf( "<?", ended );
+      final String pi = xml.substring( began + 2, ended - 2 );
+      result = getPseudoAttribute(
+          pi.substring( STYLESHEET_TARGET.length() ), "href" );
+    }
+    else {
+      result = parseXsltFilename( xml );
+      ended = findStylesheet( xml );
+    }
+
+    if( ended > 0 && result != null && !result.isEmpty() ) {
+      this.prologue = xml.substring( 0, ended );
+      this.href = result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Scans the XML prologue for the stylesheet processing instruction without
+   * parsing the document. The scan gives up upon encountering anything other
+   * than whitespace, comments, or processing instructions (such as a
+   * document type declaration), in which case the caller must parse the XML.
+   *
+   * @param xml The XML that may start with a stylesheet instruction.
+   * @return The offset just past the end of the stylesheet instruction, or
+   * -1 if the instruction couldn't be found.
+   */
+  private static int scanPrologue( final String xml ) {
+    final int length = Math.min( xml.length(), MAX_PROLOGUE_LENGTH );
+    int i = !xml.isEmpty() && xml.charAt( 0 ) == '\uFEFF' ? 1 : 0;
+
+    while( i < length ) {
+      final char c = xml.charAt( i );
+
+      if( c == ' ' || c == '\t' || c == '\r' || c == '\n' ) {
+        i++;
+      }
+      else if( xml.startsWith( "<?", i ) ) {
+        final int ended = xml.indexOf( "?>", i + 2 );
+
+        if( ended < 0 ) {
+          break;
+        }
+
+        if( isStylesheet( xml, i + 2 ) ) {
+          return ended + 2;
+        }
+
+        i = ended + 2;
+      }
+      else if( xml.startsWith( "<!--", i ) ) {
+        final int ended = xml.indexOf( "-->", i + 4 );
+
+        if( ended < 0 ) {
+          break;
+        }
+
+        i = ended + 3;
+      }
+      else {
+        break;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Answers whether a stylesheet processing instruction target starts at
+   * the given offset.
+   */
+  private static boolean isStylesheet( final String xml, final int offset ) {
+    final int ended = offset + STYLESHEET_TARGET.length();
+
+    if( ended < xml.length() &&
+        xml.regionMatches( true, offset, STYLESHEET_TARGET, 0,
+                           STYLESHEET_TARGET.length() ) ) {
+      final char c = xml.charAt( ended );
+      return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '?';
+    }
+
+    return false;
+  }
+
+  /**
+   * Finds the end of the stylesheet processing instruction after the XML
+   * has been parsed.
+   *
+   * @param xml The XML that contains a stylesheet instruction.
+   * @return The offset just past the end of the stylesheet instruction, or
+   * -1 if the instruction couldn't be found.
+   */
+  private static int findStylesheet( final String xml ) {
+    final int length = Math.min( xml.length(), MAX_PROLOGUE_LENGTH );
+
+    for( int i = xml.indexOf( "<?" ); i >= 0 && i < length;
+         i = xml.indexOf( "<?", i + 2 ) ) {
+      if( isStylesheet( xml, i + 2 ) ) {
+        final int ended = xml.indexOf( "?>", i + 2 );
+        return ended < 0 ? -1 : ended + 2;
+      }
+    }
+
+    return -1;
+  }
+
   /**
    * Given XML text, this will use a StAX pull reader to obtain the XML
    * stylesheet processing instruction. This will throw a parse exception if the
@@ -180,7 +464,7 @@ public class XmlProcessor extends AbstractProcessor<String>
    * @return The href pseudo-attribute value.
    * @throws XMLStreamException Could not parse the XML file.
    */
-  private String getXsltFilename( final String xml )
+  private String parseXsltFilename( final String xml )
       throws XMLStreamException, XPathException {
 
     String result = "";
@@ -199,7 +483,7 @@ public class XmlProcessor extends AbstractProcessor<String>
           final ProcessingInstruction pi = (ProcessingInstruction) event;
           final String target = pi.getTarget();
 
-          if( "xml-stylesheet".equalsIgnoreCase( target ) ) {
+          if( STYLESHEET_TARGET.equalsIgnoreCase( target ) ) {
             result = getPseudoAttribute( pi.getData(), "href" );
             found = true;
           }
@@ -227,24 +511,31 @@ public class XmlProcessor extends AbstractProcessor<String>
     return XMLInputFactory.newInstance();
   }
 
-  private synchronized TransformerFactory getTransformerFactory() {
-    if( this.transformerFactory == null ) {
-      this.transformerFactory = createTransformerFactory();
-    }
-
-    return this.transformerFactory;
-  }
-
   /**
    * Returns a high-performance XSLT 2 transformation engine.
    *
    * @return An XSL transforming engine.
    */
-  private TransformerFactory createTransformerFactory() {
+  private static TransformerFactory createTransformerFactory() {
     final TransformerFactory factory = new TransformerFactoryImpl();
 
     // Bubble problems up to the user interface, rather than standard error.
-    factory.setErrorListener( this );
+    factory.setErrorListener( new ErrorListener() {
+      @Override
+      public void warning( final TransformerException ex ) {
+        throw new RuntimeException( ex );
+      }
+
+      @Override
+      public void error( final TransformerException ex ) {
+        throw new RuntimeException( ex );
+      }
+
+      @Override
+      public void fatalError( final TransformerException ex ) {
+        throw new RuntimeException( ex );
+      }
+    } );
 
     return factory;
   }
@@ -280,6 +571,29 @@ public class XmlProcessor extends AbstractProcessor<String>
     throw new RuntimeException( ex );
   }
 
+  /**
+   * Associates a compiled stylesheet with the file attributes of its source,
+   * which identify the version of the file that was compiled.
+   */
+  private static final class Stylesheet {
+    private final Templates templates;
+    private final FileTime modified;
+    private final long size;
+    private final long version = VERSIONS.incrementAndGet();
+
+    private Stylesheet(
+        final Templates templates, final BasicFileAttributes attributes ) {
+      this.templates = templates;
+      this.modified = attributes.lastModifiedTime();
+      this.size = attributes.size();
+    }
+
+    private boolean isCurrent( final BasicFileAttributes attributes ) {
+      return this.modified.equals( attributes.lastModifiedTime() ) &&
+          this.size == attributes.size();
+    }
+  }
+
   private void setPath( final Path path ) {
     this.path = path;
   }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.markdown;
+
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.vladsch.flexmark.parser.Parser.REFERENCES;
+
+/**
+ * Caches a rendering of each top-level block in a Markdown document, so that
+ * only blocks that were edited since the previous render are rendered again.
+ * Blocks are found by the hash code of their source text, then compared with
+ * the text they were rendered from, which avoids copying the whole document
+ * on every render. Blocks no longer in the document are dropped on each
+ * render. Instances must not be shared across threads.
+ *
+ * @param <T> The type of rendering for each block.
+ */
+final class BlockCache<T> {
+
+  /**
+   * Rendered blocks from the most recent document, keyed by source text
+   * hash code.
+   */
+  private Map<Integer, Block<T>> mBlocks = new HashMap<>();
+
+  /**
+   * Hash of the link reference definitions used to render the cached blocks.
+   * Any block may refer to a reference, so changes invalidate every block.
+   */
+  private int mReferencesHash;
+
+  /**
+   * Associates a block's rendering with the text it was rendered from.
+   */
+  private static final class Block<T> {
+    private final String mSource;
+    private final T mRendering;
+
+    private Block( final CharSequence source, final T rendering ) {
+      mSource = source.toString();
+      mRendering = rendering;
+    }
+
+    /**
+     * Answers whether this block was rendered from the given source text.
+     *
+     * @param source The text to compare against the rendered block's text.
+     * @return {@code true} if the source text is unchanged.
+     */
+    private boolean isRenderOf( final CharSequence source ) {
+      return CharSequence.compare( mSource, source ) == 0;
+    }
+  }
+
+  BlockCache() {
+  }
+
+  /**
+   * Returns a rendering of each top-level block in the given document,
+   * rendering only those blocks that are not cached.
+   *
+   * @param document The parsed Markdown document.
+   * @param renderer Renders a single top-level block.
+   * @return The rendered blocks, in document order.
+   */
+  List<T> render(
+      final Document document, final Function<Node, T> renderer ) {
+    final int referencesHash = hashReferences( document );
+
+    if( referencesHash != mReferencesHash ) {
+      mBlocks.clear();
+      mReferencesHash = referencesHash;
+    }
+
+    final var cache = mBlocks;
+    final var blocks = new HashMap<Integer, Block<T>>( cache.size() );
+    final var rendered = new ArrayList<T>();
+
+    for( var node = document.getFirstChild(); node != null;
+         node = node.getNext() ) {
+      final var chars = node.getChars();
+      final var hash = chars.hashCode();
+      var block = cache.get( hash );
+
+      if( block == null || !block.isRenderOf( chars ) ) {
+        block = new Block<>( chars, renderer.apply( node ) );
+      }
+
+      blocks.put( hash, block );
+      rendered.add( block.mRendering );
+    }
+
+    mBlocks = blocks;
+
+    return rendered;
+  }
+
+  /**
+   * Computes a hash of all link reference definitions in the document.
+   *
+   * @param document The parsed document that may define link references.
+   * @return A hash code that changes whenever any reference changes.
+   */
+  private static int hashReferences( final Document document ) {
+    int hash = 0;
+
+    for( final var reference : REFERENCES.get( document ).values() ) {
+      hash = 31 * hash + reference.getChars().hashCode();
+    }
+
+    return hash;
+  }
+}
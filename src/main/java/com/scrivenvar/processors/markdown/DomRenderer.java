@@ -0,0 +1,359 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.markdown;
+
+import com.scrivenvar.preview.PreviewBlock;
+import com.vladsch.flexmark.ast.*;
+import com.vladsch.flexmark.ext.gfm.strikethrough.Strikethrough;
+import com.vladsch.flexmark.ext.gfm.strikethrough.Subscript;
+import com.vladsch.flexmark.ext.superscript.Superscript;
+import com.vladsch.flexmark.ext.typographic.TypographicQuotes;
+import com.vladsch.flexmark.ext.typographic.TypographicSmarts;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.ListOptions;
+import com.vladsch.flexmark.util.ast.BlankLine;
+import com.vladsch.flexmark.util.ast.Block;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.TextCollectingVisitor;
+import com.vladsch.flexmark.util.sequence.Escaping;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.scrivenvar.Constants.PARAGRAPH_ID_PREFIX;
+
+/**
+ * Responsible for rendering a Markdown abstract syntax tree directly into DOM
+ * nodes for the preview, rather than into an HTML string that must be parsed
+ * again. The nodes match those that {@link HtmlRenderer} would produce for
+ * the same tree, including the paragraph identifiers written by the
+ * {@link BlockExtension} and the image paths resolved by the
+ * {@link ImageLinkExtension}.
+ * <p>
+ * Blocks containing syntax that this class does not render (such as raw
+ * HTML, tables, and reference links) are rendered to HTML by the given
+ * {@link HtmlRenderer}, then converted to DOM nodes.
+ * </p>
+ */
+public class DomRenderer {
+
+  private final static W3CDom W3C_DOM = new W3CDom();
+
+  private final HtmlRenderer mRenderer;
+  private final ImageLinkExtension mImageLinkExtension;
+  private final DocumentBuilder mBuilder;
+
+  /**
+   * Document that receives the nodes for the block being rendered.
+   */
+  private org.w3c.dom.Document mDocument;
+
+  /**
+   * Number of paragraph identifiers written to the block being rendered.
+   */
+  private int mIdCount;
+
+  /**
+   * List options that govern whether list item paragraphs are wrapped.
+   */
+  private ListOptions mListOptions;
+
+  /**
+   * Thrown when a node cannot be rendered directly to the DOM.
+   */
+  private static final class UnsupportedNodeException
+      extends RuntimeException {
+    private UnsupportedNodeException() {
+      super( null, null, false, false );
+    }
+  }
+
+  private static final UnsupportedNodeException UNSUPPORTED =
+      new UnsupportedNodeException();
+
+  /**
+   * @param renderer Renders blocks that cannot be rendered to the DOM.
+   * @param images   Resolves image paths.
+   */
+  public DomRenderer(
+      final HtmlRenderer renderer, final ImageLinkExtension images ) {
+    mRenderer = renderer;
+    mImageLinkExtension = images;
+
+    try {
+      mBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    } catch( final ParserConfigurationException ex ) {
+      throw new IllegalStateException( ex );
+    }
+  }
+
+  /**
+   * Renders a top-level block of the given document.
+   *
+   * @param document The parsed document that contains the block.
+   * @param block    The block to render.
+   * @return The DOM nodes for the block.
+   */
+  public PreviewBlock render( final Document document, final Node block ) {
+    mDocument = mBuilder.newDocument();
+    mIdCount = 0;
+    mListOptions = ListOptions.get( document );
+
+    final var fragment = mDocument.createDocumentFragment();
+
+    try {
+      renderNode( fragment, block );
+    } catch( final UnsupportedNodeException ex ) {
+      return renderHtml( block );
+    }
+
+    final var nodes = new ArrayList<org.w3c.dom.Node>();
+
+    for( var node = fragment.getFirstChild(); node != null;
+         node = node.getNextSibling() ) {
+      nodes.add( node );
+    }
+
+    return new PreviewBlock( nodes, mIdCount );
+  }
+
+  /**
+   * Renders the given block to HTML, then converts the HTML to DOM nodes.
+   */
+  private PreviewBlock renderHtml( final Node block ) {
+    final var html = mRenderer.render( block );
+    final var document = W3C_DOM.fromJsoup( Jsoup.parseBodyFragment( html ) );
+    final var body = document.getElementsByTagName( "body" ).item( 0 );
+    final var nodes = new ArrayList<org.w3c.dom.Node>();
+    int ids = 0;
+
+    for( var node = body.getFirstChild(); node != null;
+         node = node.getNextSibling() ) {
+      nodes.add( node );
+    }
+
+    // The BlockExtension numbers identifiers from zero for every render.
+    for( int i = html.indexOf( "id=\"" + PARAGRAPH_ID_PREFIX ); i >= 0;
+         i = html.indexOf( "id=\"" + PARAGRAPH_ID_PREFIX, i + 1 ) ) {
+      ids++;
+    }
+
+    return new PreviewBlock( nodes, ids );
+  }
+
+  private void renderNode( final org.w3c.dom.Node parent, final Node node ) {
+    if( node instanceof Paragraph ) {
+      renderParagraph( parent, (Paragraph) node );
+    }
+    else if( node instanceof Heading ) {
+      renderChildren(
+          block( parent, "h" + ((Heading) node).getLevel(), node ), node );
+    }
+    else if( node instanceof BlockQuote ) {
+      renderChildren( element( parent, "blockquote" ), node );
+    }
+    else if( node instanceof BulletList ) {
+      renderChildren( element( parent, "ul" ), node );
+    }
+    else if( node instanceof OrderedList ) {
+      final var list = element( parent, "ol" );
+      final int start = ((OrderedList) node).getStartNumber();
+
+      if( start != 1 ) {
+        list.setAttribute( "start", Integer.toString( start ) );
+      }
+
+      renderChildren( list, node );
+    }
+    else if( node instanceof ListItem ) {
+      renderChildren( block( parent, "li", node ), node );
+    }
+    else if( node instanceof FencedCodeBlock ) {
+      final var code = (FencedCodeBlock) node;
+      final var info = code.getInfo().toString().trim();
+      final var element = element( block( parent, "pre", node ), "code" );
+
+      if( !info.isEmpty() ) {
+        final var language =
+            Escaping.unescapeString( info.split( "\\s" )[ 0 ] );
+        element.setAttribute( "class", "language-" + language );
+      }
+
+      text( element, code.getContentChars().normalizeEOL() );
+    }
+    else if( node instanceof IndentedCodeBlock ) {
+      final var code = (IndentedCodeBlock) node;
+      final var element = element( block( parent, "pre", node ), "code" );
+
+      text( element, code.getContentChars().trimTailBlankLines()
+                         .normalizeEndWithEOL() );
+    }
+    else if( node instanceof ThematicBreak ) {
+      block( parent, "hr", node );
+    }
+    else if( node instanceof Text || node instanceof HtmlEntity ) {
+      text( parent, Escaping.normalizeEOL( node.getChars().unescape() ) );
+    }
+    else if( node instanceof TextBase ) {
+      renderChildren( parent, node );
+    }
+    else if( node instanceof SoftLineBreak ) {
+      text( parent, "\n" );
+    }
+    else if( node instanceof HardLineBreak ) {
+      element( parent, "br" );
+      text( parent, "\n" );
+    }
+    else if( node instanceof Emphasis ) {
+      renderChildren( element( parent, "em" ), node );
+    }
+    else if( node instanceof StrongEmphasis ) {
+      renderChildren( element( parent, "strong" ), node );
+    }
+    else if( node instanceof Strikethrough ) {
+      renderChildren( element( parent, "del" ), node );
+    }
+    else if( node instanceof Subscript ) {
+      renderChildren( element( parent, "sub" ), node );
+    }
+    else if( node instanceof Superscript ) {
+      renderChildren( element( parent, "sup" ), node );
+    }
+    else if( node instanceof Code ) {
+      text( element( parent, "code" ),
+            Escaping.collapseWhitespace( ((Code) node).getText(), true ) );
+    }
+    else if( node instanceof TypographicSmarts ) {
+      text( parent, Escaping.unescapeString(
+          ((TypographicSmarts) node).getTypographicText() ) );
+    }
+    else if( node instanceof TypographicQuotes ) {
+      final var quotes = (TypographicQuotes) node;
+      text( parent, Escaping.unescapeString(
+          quotes.getTypographicOpening() ) );
+      renderChildren( parent, node );
+      text( parent, Escaping.unescapeString(
+          quotes.getTypographicClosing() ) );
+    }
+    else if( node instanceof Link ) {
+      final var link = (Link) node;
+      final var anchor = element( parent, "a" );
+      anchor.setAttribute( "href", link.getUrl().unescape() );
+      title( anchor, link.getTitle().unescape() );
+      renderChildren( anchor, node );
+    }
+    else if( node instanceof Image ) {
+      final var image = (Image) node;
+      final var url = image.getUrl().unescape();
+      final var element = element( parent, "img" );
+      final var alt = new TextCollectingVisitor().collectAndGetText( node );
+
+      element.setAttribute( "src", mImageLinkExtension.resolveImage( url ) );
+      element.setAttribute( "alt", alt );
+      title( element, image.getTitle().unescape() );
+    }
+    else if( node instanceof MailLink ) {
+      final var text = ((MailLink) node).getText().unescape();
+      final var anchor = element( parent, "a" );
+      anchor.setAttribute( "href", "mailto:" + text );
+      text( anchor, text );
+    }
+    else if( node instanceof AutoLink ) {
+      final var text = ((AutoLink) node).getText().unescape();
+      final var anchor = element( parent, "a" );
+      anchor.setAttribute( "href", text );
+      text( anchor, text );
+    }
+    else if( !(node instanceof BlankLine) && !(node instanceof Reference) ) {
+      throw UNSUPPORTED;
+    }
+  }
+
+  /**
+   * Paragraphs in tight lists are not wrapped in paragraph elements.
+   */
+  private void renderParagraph(
+      final org.w3c.dom.Node parent, final Paragraph paragraph ) {
+    final var container = paragraph.getParent();
+
+    if( container instanceof ParagraphItemContainer &&
+        ((ParagraphItemContainer) container).isParagraphWrappingDisabled(
+            paragraph, mListOptions, paragraph.getDocument() ) ) {
+      renderChildren( parent, paragraph );
+    }
+    else {
+      renderChildren( block( parent, "p", paragraph ), paragraph );
+    }
+  }
+
+  private void renderChildren(
+      final org.w3c.dom.Node parent, final Node node ) {
+    for( var child = node.getFirstChild(); child != null;
+         child = child.getNext() ) {
+      renderNode( parent, child );
+    }
+  }
+
+  /**
+   * Appends an element having a paragraph identifier, following the same
+   * rules as the {@link BlockExtension}.
+   */
+  private Element block(
+      final org.w3c.dom.Node parent, final String name, final Node node ) {
+    final var element = element( parent, name );
+
+    if( node instanceof Block ) {
+      element.setAttribute( "id", PARAGRAPH_ID_PREFIX + mIdCount++ );
+    }
+
+    return element;
+  }
+
+  private Element element( final org.w3c.dom.Node parent, final String name ) {
+    final var element = mDocument.createElementNS( null, name );
+    parent.appendChild( element );
+    return element;
+  }
+
+  private void text( final org.w3c.dom.Node parent, final CharSequence text ) {
+    parent.appendChild( mDocument.createTextNode( text.toString() ) );
+  }
+
+  private void title( final Element element, final String title ) {
+    if( !title.isEmpty() ) {
+      element.setAttribute( "title", title );
+    }
+  }
+}
@@ -38,6 +38,7 @@ import com.vladsch.flexmark.html.IndependentLinkResolverFactory;
 import com.vladsch.flexmark.html.LinkResolver;
 import com.vladsch.flexmark.html.renderer.LinkResolverBasicContext;
 import com.vladsch.flexmark.html.renderer.LinkStatus;
+import com.vladsch.flexmark.html.renderer.LinkType;
 import com.vladsch.flexmark.html.renderer.ResolvedLink;
 import com.vladsch.flexmark.util.ast.Node;
 import com.vladsch.flexmark.util.data.MutableDataHolder;
@@ -190,6 +191,18 @@ public class ImageLinkExtension implements HtmlRenderer.HtmlRendererExtension {
     mPath = path;
   }
 
+  /**
+   * Resolves the path to an image in the same way as images are resolved
+   * when rendering a document to HTML.
+   *
+   * @param url The image path given in the document.
+   * @return The path to the image file, or the given path if not found.
+   */
+  public String resolveImage( final String url ) {
+    final var link = new ResolvedLink( LinkType.IMAGE, url );
+    return new ImageLinkResolver().resolve( link ).getUrl();
+  }
+
   @Override
   public void rendererOptions( @NotNull final MutableDataHolder options ) {
   }
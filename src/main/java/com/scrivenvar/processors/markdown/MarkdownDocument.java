@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.markdown;
+
+import com.scrivenvar.editors.TextSnapshot;
+import com.vladsch.flexmark.ast.BlockQuote;
+import com.vladsch.flexmark.ast.ListBlock;
+import com.vladsch.flexmark.ast.ListItem;
+import com.vladsch.flexmark.ast.Paragraph;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Block;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.IParse;
+import com.vladsch.flexmark.util.ast.Node;
+
+/**
+ * Responsible for parsing the text of a single editor into a Markdown
+ * abstract syntax tree once per revision of the text. The preview renderer,
+ * the spell checker, and the paragraph identifier approximation all request
+ * the tree from the same instance, so each revision is parsed only once and
+ * every consumer sees the same node offsets.
+ * <p>
+ * The editor's own text (the source) is identified by its revision number.
+ * Text derived from the source, such as with definitions substituted, is
+ * cached separately, so parsing one never evicts the other. When a
+ * processor passes the source text through unchanged, the derived request
+ * receives the source tree. Paragraph identifiers are only approximated
+ * from the source tree, because its lines match the editor's lines. The
+ * trees are shared between threads, so consumers must not modify them.
+ * </p>
+ */
+public final class MarkdownDocument {
+
+  private static final Tree EMPTY = new Tree( -1, null, null );
+
+  private final IParse mParser =
+      Parser.builder().extensions( MarkdownProcessor.createExtensions() )
+            .build();
+
+  /**
+   * The editor's most recent text, which need not have been parsed.
+   */
+  private volatile TextSnapshot mSnapshot;
+
+  /**
+   * The newest revision of the editor's text that has been parsed.
+   */
+  private volatile Tree mSource = EMPTY;
+
+  /**
+   * The most recently parsed text that was derived from the editor's text.
+   */
+  private volatile Tree mDerived = EMPTY;
+
+  private final Object mSourceMutex = new Object();
+  private final Object mDerivedMutex = new Object();
+
+  /**
+   * Associates a text with its syntax tree.
+   */
+  private static final class Tree {
+    private final long mRevision;
+    private final String mText;
+    private final Node mDocument;
+
+    private Tree( final long revision, final String text, final Node doc ) {
+      mRevision = revision;
+      mText = text;
+      mDocument = doc;
+    }
+
+    /**
+     * Answers whether this tree was parsed from the given text.
+     */
+    private boolean isOf( final String text ) {
+      final var parsed = mText;
+
+      //noinspection StringEquality
+      return parsed == text ||
+          (parsed != null && parsed.length() == text.length() &&
+              parsed.equals( text ));
+    }
+  }
+
+  /**
+   * Records the editor's most recent text, without parsing it. Called for
+   * every edit.
+   *
+   * @param snapshot The current revision of the editor's text.
+   */
+  public void setSnapshot( final TextSnapshot snapshot ) {
+    mSnapshot = snapshot;
+  }
+
+  /**
+   * Returns the syntax tree for the given revision of the editor's text,
+   * parsing the text only if the revision differs from the most recently
+   * parsed revision. Concurrent requests for the same revision wait for a
+   * single parse.
+   *
+   * @param snapshot A revision of the editor's text.
+   * @return The root node of the Markdown tree, which must not be modified.
+   */
+  public Node parse( final TextSnapshot snapshot ) {
+    final long revision = snapshot.getRevision();
+    var tree = mSource;
+
+    if( tree.mRevision != revision ) {
+      synchronized( mSourceMutex ) {
+        tree = mSource;
+
+        if( tree.mRevision != revision ) {
+          final var text = snapshot.getText();
+          final var parsed = new Tree( revision, text, mParser.parse( text ) );
+
+          // An older revision must not replace the tree of a newer one.
+          if( revision > tree.mRevision ) {
+            mSource = parsed;
+          }
+
+          tree = parsed;
+        }
+      }
+    }
+
+    return tree.mDocument;
+  }
+
+  /**
+   * Returns the syntax tree for text derived from the editor's text. When
+   * the text is the editor's current text, the source tree is returned;
+   * otherwise, the text is parsed only if it differs from the most recently
+   * parsed derived text.
+   *
+   * @param text The Markdown text to parse.
+   * @return The root node of the Markdown tree, which must not be modified.
+   */
+  public Node parse( final String text ) {
+    final var snapshot = mSnapshot;
+
+    if( snapshot != null && snapshot.isText( text ) ) {
+      return parse( snapshot );
+    }
+
+    var tree = mDerived;
+
+    if( !tree.isOf( text ) ) {
+      synchronized( mDerivedMutex ) {
+        tree = mDerived;
+
+        if( !tree.isOf( text ) ) {
+          tree = new Tree( -1, text, mParser.parse( text ) );
+          mDerived = tree;
+        }
+      }
+    }
+
+    return tree.mDocument;
+  }
+
+  /**
+   * Parses the given text without caching the result, such as a single
+   * paragraph that is being spell checked.
+   *
+   * @param text The Markdown text to parse.
+   * @return The root node of the Markdown tree for the text.
+   */
+  public Node toNode( final String text ) {
+    return mParser.parse( text );
+  }
+
+  /**
+   * Returns the identifier that the preview assigns to the last block that
+   * starts at or before the given line, using the syntax tree of the
+   * editor's current text. See {@link BlockExtension.IdAttributeProvider}
+   * for the blocks that receive identifiers.
+   *
+   * @param line The zero-based line (editor paragraph) number.
+   * @return The paragraph identifier, or {@code -1} if the editor's current
+   * text has not been parsed.
+   */
+  public int getParagraphId( final int line ) {
+    final var snapshot = mSnapshot;
+    final var tree = mSource;
+
+    if( snapshot == null || tree.mRevision != snapshot.getRevision() ) {
+      return -1;
+    }
+
+    final var document = tree.mDocument;
+    final var chars = document.getChars();
+    final int length = chars.length();
+    int ended = 0;
+
+    // Find the offset just past the end of the given line.
+    for( int i = 0; i <= line && ended < length; i++ ) {
+      final int eol = chars.indexOf( '\n', ended );
+      ended = eol < 0 ? length : eol + 1;
+    }
+
+    int id = -1;
+
+    for( final var node : document.getDescendants() ) {
+      if( node.getStartOffset() >= ended ) {
+        break;
+      }
+
+      if( hasId( node ) ) {
+        id++;
+      }
+    }
+
+    return Math.max( id, 0 );
+  }
+
+  /**
+   * Answers whether the given node is rendered with a paragraph identifier.
+   */
+  private static boolean hasId( final Node node ) {
+    if( !(node instanceof Block) ||
+        node instanceof Document ||
+        node instanceof BlockQuote ||
+        node instanceof ListBlock ) {
+      return false;
+    }
+
+    // Paragraphs in tight lists are not wrapped in paragraph elements.
+    final var parent = node.getParent();
+
+    return !(node instanceof Paragraph &&
+        parent instanceof ListItem &&
+        parent.getParent() instanceof ListBlock &&
+        ((ListBlock) parent.getParent()).isTight());
+  }
+}
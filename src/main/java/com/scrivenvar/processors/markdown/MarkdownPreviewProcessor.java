@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.markdown;
+
+import com.scrivenvar.preview.HTMLPreviewPane;
+import com.scrivenvar.preview.PreviewBlock;
+import com.vladsch.flexmark.util.ast.Document;
+
+import java.nio.file.Path;
+
+/**
+ * Responsible for parsing a Markdown document and updating the preview pane
+ * with DOM nodes rendered directly from the abstract syntax tree. This avoids
+ * serializing the document as HTML only to have the preview pane parse the
+ * HTML back into a DOM. This should be the last link in the processor chain.
+ */
+public class MarkdownPreviewProcessor extends MarkdownProcessor {
+
+  private final HTMLPreviewPane mPreviewPane;
+  private final DomRenderer mDomRenderer;
+
+  /**
+   * Rendered blocks from the most recent document.
+   */
+  private final BlockCache<PreviewBlock> mBlocks = new BlockCache<>();
+
+  /**
+   * Constructs the end of a processing chain.
+   *
+   * @param previewPane The pane to update with the rendered document.
+   * @param path        Path to the file being edited, for resolving images.
+   * @param document    Parses the text, sharing the syntax tree with other
+   *                    consumers of the same text.
+   */
+  public MarkdownPreviewProcessor(
+      final HTMLPreviewPane previewPane, final Path path,
+      final MarkdownDocument document ) {
+    super( null, path, document );
+
+    mPreviewPane = previewPane;
+    mDomRenderer = new DomRenderer( getRenderer(), getImageLinkExtension() );
+  }
+
+  /**
+   * Updates the preview pane with the given Markdown document. Only blocks
+   * whose source text changed since the previous call are rendered.
+   *
+   * @param markdown The Markdown document to render in the preview pane.
+   * @return {@code null} to indicate no more processors in the chain.
+   */
+  @Override
+  public String apply( final String markdown ) {
+    final var document = (Document) parse( markdown );
+    final var preview = mBlocks.render(
+        document, node -> getDomRenderer().render( document, node ) );
+
+    getPreviewPane().process( preview );
+
+    // No more processing required.
+    return null;
+  }
+
+  private HTMLPreviewPane getPreviewPane() {
+    return mPreviewPane;
+  }
+
+  private DomRenderer getDomRenderer() {
+    return mDomRenderer;
+  }
+}
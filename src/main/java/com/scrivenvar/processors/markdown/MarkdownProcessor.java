@@ -35,8 +35,7 @@ import com.vladsch.flexmark.ext.superscript.SuperscriptExtension;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
 import com.vladsch.flexmark.ext.typographic.TypographicExtension;
 import com.vladsch.flexmark.html.HtmlRenderer;
-import com.vladsch.flexmark.parser.Parser;
-import com.vladsch.flexmark.util.ast.IParse;
+import com.vladsch.flexmark.util.ast.Document;
 import com.vladsch.flexmark.util.ast.Node;
 import com.vladsch.flexmark.util.misc.Extension;
 
@@ -44,40 +43,63 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import static com.scrivenvar.Constants.PARAGRAPH_ID_PREFIX;
 import static com.scrivenvar.Constants.USER_DIRECTORY;
 
 /**
  * Responsible for parsing a Markdown document and rendering it as HTML.
+ * Documents are rendered one top-level block at a time; the HTML for each
+ * block is cached in a {@link BlockCache} so that only blocks that were
+ * edited since the previous render are passed through the renderer.
  */
 public class MarkdownProcessor extends AbstractProcessor<String> {
 
+  /**
+   * Text that precedes the number of each paragraph identifier written by
+   * the {@link BlockExtension}.
+   */
+  private static final String ID_ATTRIBUTE = "id=\"" + PARAGRAPH_ID_PREFIX;
+
   private final HtmlRenderer mRenderer;
-  private final IParse mParser;
+  private final MarkdownDocument mDocument;
+  private final ImageLinkExtension mImageLinkExtension;
+
+  /**
+   * Rendered blocks from the most recent document.
+   */
+  private final BlockCache<RenderedBlock> mBlocks = new BlockCache<>();
 
   public MarkdownProcessor(
       final Processor<String> successor ) {
     this( successor, Path.of( USER_DIRECTORY ) );
   }
 
+  public MarkdownProcessor(
+      final Processor<String> successor, final Path path ) {
+    this( successor, path, new MarkdownDocument() );
+  }
+
   /**
    * Constructs a new Markdown processor that can create HTML documents.
    *
    * @param successor Usually the HTML Preview Processor.
+   * @param path      Path to the file being edited, for resolving images.
+   * @param document  Parses the text, sharing the syntax tree with other
+   *                  consumers of the same text.
    */
   public MarkdownProcessor(
-      final Processor<String> successor, final Path path ) {
+      final Processor<String> successor, final Path path,
+      final MarkdownDocument document ) {
     super( successor );
 
+    mDocument = document;
+
     // Standard extensions
-    final Collection<Extension> extensions = new ArrayList<>();
-    extensions.add( DefinitionExtension.create() );
-    extensions.add( StrikethroughSubscriptExtension.create() );
-    extensions.add( SuperscriptExtension.create() );
-    extensions.add( TablesExtension.create() );
-    extensions.add( TypographicExtension.create() );
+    final Collection<Extension> extensions = createExtensions();
 
     // Allows referencing image files via relative paths and dynamic file types.
-    extensions.add( ImageLinkExtension.create( path ) );
+    mImageLinkExtension = ImageLinkExtension.create( path );
+    extensions.add( mImageLinkExtension );
     extensions.add( BlockExtension.create() );
 
     // TODO: https://github.com/FAlthausen/Vollkorn-Typeface/issues/38
@@ -85,7 +107,22 @@ public class MarkdownProcessor extends AbstractProcessor<String> {
     // extensions.add( LigatureExtension.create() );
 
     mRenderer = HtmlRenderer.builder().extensions( extensions ).build();
-    mParser = Parser.builder().extensions( extensions ).build();
+  }
+
+  /**
+   * Creates the extensions that affect parsing. Every parser of the text must
+   * use the same extensions so that the syntax trees agree on node offsets.
+   *
+   * @return A new, modifiable collection of Markdown extensions.
+   */
+  static Collection<Extension> createExtensions() {
+    final Collection<Extension> extensions = new ArrayList<>();
+    extensions.add( DefinitionExtension.create() );
+    extensions.add( StrikethroughSubscriptExtension.create() );
+    extensions.add( SuperscriptExtension.create() );
+    extensions.add( TablesExtension.create() );
+    extensions.add( TypographicExtension.create() );
+    return extensions;
   }
 
   /**
@@ -109,39 +146,120 @@ public class MarkdownProcessor extends AbstractProcessor<String> {
    * @return The markdown AST for the given text (usually a paragraph).
    */
   public Node toNode( final String markdown ) {
-    return parse( markdown );
+    return getDocument().toNode( markdown );
   }
 
   /**
-   * Helper method to create an AST given some markdown.
+   * Helper method to create an AST given some markdown. The tree is shared
+   * with other consumers of the same text, so it must not be modified.
    *
    * @param markdown The markdown to parse.
    * @return The root node of the markdown tree.
    */
-  private Node parse( final String markdown ) {
-    return getParser().parse( markdown );
+  protected Node parse( final String markdown ) {
+    return getDocument().parse( markdown );
   }
 
   /**
-   * Converts a string of markdown into HTML.
+   * Converts a string of markdown into HTML. The whole document is parsed
+   * because block boundaries depend on context (such as fenced code blocks
+   * that contain blank lines), but only blocks whose source text changed
+   * since the previous call are rendered.
    *
    * @param markdown The markdown text to convert to HTML, must not be null.
    * @return The markdown rendered as an HTML document.
    */
   private String toHtml( final String markdown ) {
-    return getRenderer().render( parse( markdown ) );
+    final var document = (Document) parse( markdown );
+    final var blocks = mBlocks.render(
+        document, node -> new RenderedBlock( getRenderer().render( node ) ) );
+    final var html = new StringBuilder( markdown.length() * 2 );
+    int id = 0;
+
+    for( final var block : blocks ) {
+      id = block.appendTo( html, id );
+    }
+
+    return html.toString();
   }
 
   /**
-   * Creates the Markdown document processor.
+   * Returns the document model that parses the Markdown text.
    *
-   * @return A Parser that can build an abstract syntax tree.
+   * @return The model that can build an abstract syntax tree.
    */
-  private IParse getParser() {
-    return mParser;
+  private MarkdownDocument getDocument() {
+    return mDocument;
   }
 
-  private HtmlRenderer getRenderer() {
+  protected HtmlRenderer getRenderer() {
     return mRenderer;
   }
+
+  protected ImageLinkExtension getImageLinkExtension() {
+    return mImageLinkExtension;
+  }
+
+  /**
+   * Retains the HTML rendered for a single top-level block. The HTML is
+   * split around the paragraph identifiers that the {@link BlockExtension}
+   * numbered from zero so that the identifiers can be renumbered relative to
+   * the block's position within the whole document.
+   */
+  private static final class RenderedBlock {
+    private final String[] mFragments;
+
+    private RenderedBlock( final String html ) {
+      mFragments = split( html );
+    }
+
+    /**
+     * Appends this block's HTML to the given buffer, numbering the paragraph
+     * identifiers starting at the given value.
+     *
+     * @param html Receives the rendered block.
+     * @param id   The first paragraph identifier for this block.
+     * @return The first paragraph identifier for the next block.
+     */
+    private int appendTo( final StringBuilder html, int id ) {
+      final var fragments = mFragments;
+      html.append( fragments[ 0 ] );
+
+      for( int i = 1; i < fragments.length; i++ ) {
+        html.append( ID_ATTRIBUTE ).append( id++ ).append( fragments[ i ] );
+      }
+
+      return id;
+    }
+
+    /**
+     * Splits the given HTML at every paragraph identifier, removing the
+     * identifier's attribute name and number.
+     *
+     * @param html HTML that contains zero or more paragraph identifiers.
+     * @return The HTML between the paragraph identifiers.
+     */
+    private static String[] split( final String html ) {
+      final var fragments = new ArrayList<String>();
+      final int length = html.length();
+      int began = 0;
+      int index = html.indexOf( ID_ATTRIBUTE );
+
+      while( index >= 0 ) {
+        int ended = index + ID_ATTRIBUTE.length();
+
+        while( ended < length && Character.isDigit( html.charAt( ended ) ) ) {
+          ended++;
+        }
+
+        fragments.add( html.substring( began, index ) );
+        began = ended;
+        index = html.indexOf( ID_ATTRIBUTE, ended );
+      }
+
+      fragments.add( html.substring( began ) );
+
+      return fragments.toArray( new String[ 0 ] );
+    }
+  }
 }
@@ -0,0 +1,679 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.r;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.reverseOrder;
+import static java.util.Map.Entry.comparingByValue;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Responsible for evaluating R expressions using several Renjin engines.
+ * The primary engine retains state between evaluations (such as assigned
+ * variables) and evaluates statements in document order; the worker engines
+ * evaluate side-effect free statements concurrently. Every engine is
+ * initialised using the same bootstrap script, so that functions and
+ * libraries loaded by the script are available on all engines.
+ * <p>
+ * The bootstrap script is evaluated once per script and working directory.
+ * Afterwards, the primary engine's global environment is captured so that
+ * subsequent requests to bootstrap the same script restore a copy of the
+ * environment instead of re-evaluating the script (and reloading libraries).
+ * </p>
+ * <p>
+ * Expressions are evaluated on threads that can be interrupted when they
+ * exceed their time budget. An engine whose evaluation was interrupted is
+ * discarded, because its environment may be left in any state; the next
+ * expression is evaluated by a new engine. Renjin need not stop when
+ * interrupted, so once every worker thread is running an abandoned
+ * evaluation, the workers are replaced by new threads and the stuck threads
+ * are left to finish on their own.
+ * </p>
+ */
+public final class REnginePool {
+  private static final String ENGINE_NAME = "Renjin";
+
+  private static final ScriptEngineManager MANAGER = new ScriptEngineManager();
+
+  private static final String SNAPSHOT_NAME = ".scrivenvar.snapshot";
+
+  /**
+   * Copies the global environment's bindings into a list. Values in R are
+   * copied on modification, so the copy shares the values.
+   */
+  private static final String SNAPSHOT =
+      "as.list( globalenv(), all.names = TRUE )";
+
+  /**
+   * Replaces the global environment's bindings with those of the snapshot.
+   */
+  private static final String RESTORE =
+      "rm( list = setdiff( ls( globalenv(), all.names = TRUE ), '" +
+          SNAPSHOT_NAME + "' ), envir = globalenv() ); " +
+          "list2env( " + SNAPSHOT_NAME + ", envir = globalenv() ); " +
+          "rm( " + SNAPSHOT_NAME + ", envir = globalenv() )";
+
+  /**
+   * Constrain memory when typing new R expressions into the document.
+   */
+  private static final int MAX_RECORDED_COSTS = 512;
+
+  /**
+   * Maximum time to wait for the bootstrap script, in milliseconds. Loading
+   * libraries can take a while, but must not block rendering indefinitely.
+   */
+  private static final long BOOTSTRAP_TIMEOUT = 60_000;
+
+  /**
+   * How often to check whether a queued expression has started running, in
+   * milliseconds.
+   */
+  private static final long POLL_INTERVAL = 50;
+
+  /**
+   * Number of threads that evaluate independent R expressions, leaving a
+   * processor free for the user interface.
+   */
+  private static final int WORKER_COUNT =
+      max( 1, Runtime.getRuntime().availableProcessors() - 1 );
+
+  /**
+   * Evaluates independent R expressions in the background; replaced once
+   * all of its threads are stuck running abandoned evaluations.
+   */
+  private static volatile Workers sWorkers = new Workers();
+
+  /**
+   * Renjin engines are not thread-safe, so each worker thread has its own,
+   * created upon first use.
+   */
+  private final ThreadLocal<Worker> mWorkers = new ThreadLocal<>();
+
+  /**
+   * Evaluates expressions that may change the R environment, in order.
+   */
+  private Primary mPrimary = new Primary();
+
+  /**
+   * Initialisation script that every engine must evaluate before any other
+   * expressions; the generation increments whenever the script changes.
+   */
+  private volatile Bootstrap mBootstrap = new Bootstrap( "", "", 0 );
+
+  /**
+   * The primary engine's global environment after evaluating the bootstrap
+   * script, or {@code null} if the script has yet to be evaluated.
+   */
+  private Object mSnapshot;
+
+  /**
+   * Incremented whenever the primary engine's environment is reset.
+   */
+  private final AtomicLong mGeneration = new AtomicLong();
+
+  /**
+   * Most recent evaluation time for each expression, in milliseconds.
+   */
+  private final Map<String, Long> mCosts = new LinkedHashMap<>() {
+    @Override
+    protected boolean removeEldestEntry(
+        final Map.Entry<String, Long> eldest ) {
+      return size() > MAX_RECORDED_COSTS;
+    }
+  };
+
+  /**
+   * Prepares the primary engine's environment using the given script. If
+   * the same script and directory were evaluated previously, the environment
+   * is restored to its state after that evaluation; otherwise, the script is
+   * evaluated by a new primary engine, so that nothing assigned beforehand
+   * is captured along with the script's environment, and each worker engine
+   * will evaluate the same script before its next expression. The
+   * generation only changes if the environment differs from what it was
+   * before the call, so restoring an environment that no expression has
+   * modified keeps previous results valid.
+   *
+   * @param script    The R code that initialises all engines.
+   * @param directory The working directory used by the script.
+   * @throws ScriptException The script could not be evaluated.
+   */
+  public synchronized void bootstrap(
+      final String script, final String directory ) throws ScriptException {
+    final var changed = !mBootstrap.matches( script, directory );
+
+    if( changed ) {
+      final var generation = mBootstrap.mGeneration + 1;
+      mBootstrap = new Bootstrap( script, directory, generation );
+      mSnapshot = null;
+      mPrimary.mExecutor.shutdown();
+      mPrimary = new Primary();
+    }
+    else if( mPrimary.mReady && !mPrimary.mModified ) {
+      return;
+    }
+
+    mGeneration.incrementAndGet();
+
+    try {
+      prepare();
+    } finally {
+      if( changed ) {
+        bootstrapWorkers( mBootstrap );
+      }
+    }
+  }
+
+  /**
+   * Returns a number that changes whenever the primary engine's environment
+   * is reset, which invalidates any results computed beforehand.
+   *
+   * @return The current environment generation.
+   */
+  public long getGeneration() {
+    return mGeneration.get();
+  }
+
+  /**
+   * Evaluates the given expression on the primary engine, which retains any
+   * changes made to the R environment. If the expression takes longer than
+   * the given time, its evaluation is interrupted and the primary engine is
+   * replaced, which resets the R environment.
+   *
+   * @param r       The R expression to evaluate.
+   * @param timeout Maximum time to wait for the result, in milliseconds.
+   * @return The result from evaluating the expression.
+   * @throws ScriptException  The expression could not be evaluated.
+   * @throws TimeoutException The expression exceeded its time budget.
+   */
+  public synchronized Object eval( final String r, final long timeout )
+      throws ScriptException, TimeoutException {
+    if( !mPrimary.mReady ) {
+      prepare();
+    }
+
+    final var engine = mPrimary.mEngine;
+    final var future =
+        mPrimary.mExecutor.submit( timed( r, () -> engine.eval( r ) ) );
+    mPrimary.mModified = true;
+
+    try {
+      return await( future, timeout );
+    } catch( final TimeoutException ex ) {
+      reset();
+      record( r, timeout );
+      throw ex;
+    }
+  }
+
+  /**
+   * Evaluates the given expression on a worker engine. Callers must only
+   * submit expressions that neither change the R environment nor depend on
+   * changes made by other expressions. Cancelling the evaluation interrupts
+   * the worker and discards its engine.
+   *
+   * @param r The R expression to evaluate.
+   * @return The result from evaluating the expression, eventually; pass to
+   * {@link #await(Future, long, long)} to wait for it.
+   */
+  public Future<Object> evalLater( final String r ) {
+    final var bootstrap = mBootstrap;
+    final var timing = new Timing();
+
+    return sWorkers.submit( timing, () -> {
+      try {
+        final var engine = getWorker( bootstrap );
+        timing.mStarted = System.nanoTime();
+
+        return timed( r, () -> engine.eval( r ) ).call();
+      } finally {
+        if( Thread.interrupted() ) {
+          mWorkers.remove();
+        }
+      }
+    } );
+  }
+
+  /**
+   * Waits for an evaluation started by {@link #evalLater(String)}. The
+   * expression's budget only counts the time it has spent running, not the
+   * time it spent queued behind other expressions, nor the time its worker
+   * spent evaluating the bootstrap script. If the deadline passes first, the
+   * evaluation continues, so that it may be awaited again later.
+   *
+   * @param future   The pending evaluation.
+   * @param budget   Maximum time the expression may run, in milliseconds.
+   * @param deadline When to stop waiting, from {@link System#nanoTime()}.
+   * @return The result from evaluating the expression.
+   * @throws ScriptException  The expression could not be evaluated.
+   * @throws TimeoutException The expression is still running. If it ran for
+   *                          its entire budget (or its worker could not be
+   *                          bootstrapped in time), the evaluation is also
+   *                          cancelled.
+   */
+  public static Object await(
+      final Future<Object> future, final long budget, final long deadline )
+      throws ScriptException, TimeoutException {
+    final var timing = ((Evaluation) future).mTiming;
+
+    while( true ) {
+      final long now = System.nanoTime();
+      final long started = timing.mStarted;
+      final long ran = timing.mRan;
+
+      // Time left before the expression (or its bootstrap) is cancelled.
+      final long remaining = started != 0
+          ? started + MILLISECONDS.toNanos( budget ) - now
+          : ran != 0
+          ? ran + MILLISECONDS.toNanos( BOOTSTRAP_TIMEOUT ) - now
+          : Long.MAX_VALUE;
+
+      if( remaining <= 0 ) {
+        future.cancel( true );
+        throw new TimeoutException();
+      }
+
+      if( deadline - now <= 0 ) {
+        throw new TimeoutException();
+      }
+
+      // Check whether the expression has started, at least occasionally.
+      final long wait = min(
+          min( remaining, deadline - now ),
+          started == 0 ? MILLISECONDS.toNanos( POLL_INTERVAL ) : Long.MAX_VALUE
+      );
+
+      try {
+        return unwrap( future, wait, NANOSECONDS );
+      } catch( final TimeoutException ignored ) {
+        // Determine whether the budget or the deadline has passed.
+      }
+    }
+  }
+
+  /**
+   * Answers whether the given worker evaluation has begun running its
+   * expression, after its worker was bootstrapped.
+   *
+   * @param future An evaluation returned from {@link #evalLater(String)}.
+   * @return {@code true} if the expression started running.
+   */
+  public static boolean hasStarted( final Future<Object> future ) {
+    return ((Evaluation) future).mTiming.mStarted != 0;
+  }
+
+  /**
+   * Waits for an evaluation on the primary engine.
+   *
+   * @param future  The pending evaluation.
+   * @param timeout Maximum time to wait for the result, in milliseconds.
+   * @return The result from evaluating the expression.
+   * @throws ScriptException  The expression could not be evaluated.
+   * @throws TimeoutException The expression exceeded its time budget, in
+   *                          which case its evaluation is cancelled.
+   */
+  private static Object await( final Future<Object> future, final long timeout )
+      throws ScriptException, TimeoutException {
+    try {
+      return unwrap( future, max( 0, timeout ), MILLISECONDS );
+    } catch( final TimeoutException ex ) {
+      future.cancel( true );
+      throw ex;
+    }
+  }
+
+  /**
+   * Waits for the given evaluation, converting its failure into a
+   * {@link ScriptException}.
+   */
+  private static Object unwrap(
+      final Future<Object> future, final long timeout, final TimeUnit unit )
+      throws ScriptException, TimeoutException {
+    try {
+      return future.get( timeout, unit );
+    } catch( final ExecutionException ex ) {
+      final var cause = ex.getCause();
+
+      if( cause instanceof ScriptException ) {
+        throw (ScriptException) cause;
+      }
+
+      throw new ScriptException( cause.getMessage() );
+    } catch( final CancellationException ex ) {
+      throw new TimeoutException();
+    } catch( final InterruptedException ex ) {
+      future.cancel( true );
+      Thread.currentThread().interrupt();
+      throw new TimeoutException();
+    }
+  }
+
+  /**
+   * Returns the expressions that took the longest to evaluate, most
+   * expensive first.
+   *
+   * @param count Maximum number of expressions to return.
+   * @return The slowest expressions mapped to their duration in milliseconds.
+   */
+  public List<Map.Entry<String, Long>> getSlowest( final int count ) {
+    final List<Map.Entry<String, Long>> costs;
+
+    synchronized( mCosts ) {
+      costs = new ArrayList<>( Map.copyOf( mCosts ).entrySet() );
+    }
+
+    costs.sort( comparingByValue( reverseOrder() ) );
+
+    return costs.subList( 0, min( count, costs.size() ) );
+  }
+
+  /**
+   * Resets the primary engine's environment to the state the bootstrap
+   * script left it in, evaluating the script if it has no snapshot. A script
+   * that exceeds {@link #BOOTSTRAP_TIMEOUT} is abandoned along with the
+   * primary engine.
+   */
+  private void prepare() throws ScriptException {
+    final var engine = mPrimary.mEngine;
+    final var script = mBootstrap.mScript;
+    final var snapshot = mSnapshot;
+
+    try {
+      mSnapshot = await( mPrimary.mExecutor.submit( () -> {
+        if( snapshot != null ) {
+          engine.put( SNAPSHOT_NAME, snapshot );
+          engine.eval( RESTORE );
+          return snapshot;
+        }
+
+        if( !script.isBlank() ) {
+          engine.eval( script );
+        }
+
+        return engine.eval( SNAPSHOT );
+      } ), BOOTSTRAP_TIMEOUT );
+      mPrimary.mModified = false;
+    } catch( final TimeoutException ex ) {
+      reset();
+      throw new ScriptException( "Bootstrap script timed out" );
+    } finally {
+      // Avoid re-evaluating a broken script before every expression.
+      mPrimary.mReady = true;
+    }
+  }
+
+  /**
+   * Replaces the primary engine after its evaluation was abandoned, which
+   * discards the R environment.
+   */
+  private void reset() {
+    mPrimary.mExecutor.shutdownNow();
+    mPrimary = new Primary();
+    mSnapshot = null;
+    mGeneration.incrementAndGet();
+  }
+
+  private <T> Callable<T> timed( final String r, final Callable<T> task ) {
+    return () -> {
+      final long began = System.nanoTime();
+
+      try {
+        return task.call();
+      } finally {
+        record( r, NANOSECONDS.toMillis( System.nanoTime() - began ) );
+      }
+    };
+  }
+
+  private void record( final String r, final long millis ) {
+    synchronized( mCosts ) {
+      mCosts.put( r, millis );
+    }
+  }
+
+  /**
+   * Evaluates the given bootstrap script on the worker threads in the
+   * background, so that expressions need not wait for it. A thread that
+   * receives none of these tasks evaluates the script before its first
+   * expression, which {@link #await(Future, long, long)} doesn't count
+   * against the expression's budget.
+   */
+  private void bootstrapWorkers( final Bootstrap bootstrap ) {
+    final var executor = sWorkers.mExecutor;
+
+    for( int i = 0; i < WORKER_COUNT; i++ ) {
+      executor.execute( () -> {
+        try {
+          getWorker( bootstrap );
+        } catch( final ScriptException ignored ) {
+          // The primary engine reports problems with the script.
+        }
+      } );
+    }
+  }
+
+  /**
+   * Returns the current thread's engine, bootstrapped to the given
+   * generation. A new engine evaluates each new script, so that nothing
+   * from a previous script remains.
+   */
+  private ScriptEngine getWorker( final Bootstrap bootstrap )
+      throws ScriptException {
+    var worker = mWorkers.get();
+
+    if( worker == null || worker.mGeneration != bootstrap.mGeneration ) {
+      worker = new Worker( createEngine() );
+      mWorkers.set( worker );
+
+      // Avoid re-evaluating a broken script before every expression.
+      worker.mGeneration = bootstrap.mGeneration;
+
+      if( !bootstrap.mScript.isBlank() ) {
+        worker.mEngine.eval( bootstrap.mScript );
+      }
+    }
+
+    return worker.mEngine;
+  }
+
+  private static ScriptEngine createEngine() {
+    synchronized( MANAGER ) {
+      return MANAGER.getEngineByName( ENGINE_NAME );
+    }
+  }
+
+  private static final class Bootstrap {
+    private final String mScript;
+    private final String mDirectory;
+    private final long mGeneration;
+
+    private Bootstrap(
+        final String script, final String directory, final long generation ) {
+      mScript = script;
+      mDirectory = directory;
+      mGeneration = generation;
+    }
+
+    private boolean matches( final String script, final String directory ) {
+      return mScript.equals( script ) && mDirectory.equals( directory );
+    }
+  }
+
+  /**
+   * The engine for stateful expressions and the thread that runs it.
+   */
+  private static final class Primary {
+    private final ScriptEngine mEngine = createEngine();
+    private final ExecutorService mExecutor = newSingleThreadExecutor(
+        runnable -> {
+          final var thread = new Thread( runnable, "r-primary" );
+          thread.setDaemon( true );
+          return thread;
+        } );
+
+    /**
+     * Set once the engine has evaluated the bootstrap script.
+     */
+    private boolean mReady;
+
+    /**
+     * Set once the engine has evaluated an expression since its environment
+     * was last prepared.
+     */
+    private boolean mModified;
+  }
+
+  private static final class Worker {
+    private final ScriptEngine mEngine;
+    private long mGeneration;
+
+    private Worker( final ScriptEngine engine ) {
+      mEngine = engine;
+    }
+  }
+
+  /**
+   * The threads that evaluate independent expressions, along with a count
+   * of those that are still running an evaluation that was cancelled.
+   */
+  private static final class Workers {
+    private final ExecutorService mExecutor = newFixedThreadPool(
+        WORKER_COUNT, runnable -> {
+          final var thread = new Thread( runnable, "r-eval" );
+          thread.setDaemon( true );
+          return thread;
+        } );
+
+    private final AtomicInteger mStuck = new AtomicInteger();
+
+    private Future<Object> submit(
+        final Timing timing, final Callable<Object> task ) {
+      final var evaluation = new Evaluation( this, timing, task );
+      mExecutor.execute( evaluation );
+      return evaluation;
+    }
+
+    /**
+     * Called when a running evaluation is cancelled. Once no thread is free
+     * to evaluate expressions, queued evaluations move to new threads.
+     */
+    private void abandoned() {
+      if( mStuck.incrementAndGet() >= WORKER_COUNT ) {
+        synchronized( Workers.class ) {
+          if( sWorkers == this ) {
+            final var workers = new Workers();
+
+            for( final var queued : mExecutor.shutdownNow() ) {
+              workers.mExecutor.execute( queued );
+            }
+
+            sWorkers = workers;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * When a worker evaluation began running and when its expression started,
+   * after the worker evaluated the bootstrap script; {@code 0} until then.
+   */
+  private static final class Timing {
+    private volatile long mRan;
+    private volatile long mStarted;
+  }
+
+  /**
+   * Tracks whether a cancelled evaluation is still running, because Renjin
+   * need not stop when its thread is interrupted.
+   */
+  private static final class Evaluation extends FutureTask<Object> {
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int FINISHED = 2;
+    private static final int ABANDONED = 3;
+
+    private final Workers mWorkers;
+    private final Timing mTiming;
+    private final AtomicInteger mState = new AtomicInteger( QUEUED );
+
+    private Evaluation(
+        final Workers workers, final Timing timing,
+        final Callable<Object> task ) {
+      super( task );
+      mWorkers = workers;
+      mTiming = timing;
+    }
+
+    @Override
+    public void run() {
+      mTiming.mRan = System.nanoTime();
+      mState.compareAndSet( QUEUED, RUNNING );
+
+      try {
+        super.run();
+      } finally {
+        if( mState.getAndSet( FINISHED ) == ABANDONED ) {
+          mWorkers.mStuck.decrementAndGet();
+        }
+      }
+    }
+
+    @Override
+    public boolean cancel( final boolean interrupt ) {
+      final var cancelled = super.cancel( interrupt );
+
+      if( cancelled && mState.compareAndSet( RUNNING, ABANDONED ) ) {
+        mWorkers.abandoned();
+      }
+
+      return cancelled;
+    }
+  }
+}
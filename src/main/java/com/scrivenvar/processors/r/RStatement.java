@@ -0,0 +1,270 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.r;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Represents an inline R statement found within a document, along with a
+ * conservative analysis of its side-effects. Statements that neither change
+ * the R environment nor share any name with a statement that might change
+ * it can be evaluated on any engine, in any order.
+ * <p>
+ * Side-effects hidden inside functions (such as a bootstrap function that
+ * assigns a global using {@code <<-}) cannot be detected; a statement that
+ * ends with the {@code # serial} comment is evaluated in order, as are all
+ * statements that follow it.
+ * </p>
+ */
+public final class RStatement {
+  private static final String NAME = "[A-Za-z.][\\w.]*";
+
+  /**
+   * Matches syntax that changes the R environment, including replacement
+   * functions (e.g., {@code names(x) <- y}) and functions that advance the
+   * random number generator. Assignments using {@code =} are found by
+   * {@link #isAssignedByEquals()}, because named arguments use the same
+   * symbol.
+   */
+  private static final Pattern STATEFUL = Pattern.compile(
+      "<<?-|->|\\.Random\\.seed|" +
+          "(?<![\\w.])(?:assign|delayedAssign|makeActiveBinding|rm|" +
+          "set\\.seed|RNGkind|sample|sample\\.int|runif|rnorm|rbinom|rpois|" +
+          "rexp|rgamma|rbeta|rt|rchisq|rf|rcauchy|rlogis|rlnorm|rweibull|" +
+          "rgeom|rhyper|rnbinom|rmultinom|rsignrank|rwilcox)\\s*\\(" );
+
+  /**
+   * Matches calls that may change how any subsequent statement evaluates,
+   * such as attaching packages.
+   */
+  private static final Pattern BARRIER = Pattern.compile(
+      "<<-|->>|\\b(?:library|require|source|attach|detach|setwd|options|" +
+          "Sys\\.setenv|rm|eval|evalq|sys\\.function)\\s*\\(" );
+
+  /**
+   * Matches the comment that marks a statement as having side-effects that
+   * cannot be detected, such as {@code `r#tally() # serial`}.
+   */
+  private static final Pattern SERIAL =
+      Pattern.compile( "#\\s*serial\\s*$" );
+
+  private static final Pattern IDENTIFIER = Pattern.compile( NAME );
+
+  /**
+   * Matches definition references in R form, such as {@code v$tree$leaf}.
+   */
+  private static final Pattern VARIABLE =
+      Pattern.compile( "(?<![\\w.])v((?:\\$\\w+)+)" );
+
+  private final String mExpression;
+  private final int mBegan;
+  private final int mEnded;
+
+  /**
+   * @param expression The R code to evaluate, without delimiters.
+   * @param began      Offset of the statement's opening delimiter.
+   * @param ended      Offset just past the statement's closing delimiter.
+   */
+  public RStatement(
+      final String expression, final int began, final int ended ) {
+    mExpression = expression;
+    mBegan = began;
+    mEnded = ended;
+  }
+
+  /**
+   * Answers whether evaluating this statement may change the R environment.
+   *
+   * @return {@code true} if this statement must be evaluated in order.
+   */
+  public boolean isStateful() {
+    return STATEFUL.matcher( mExpression ).find() ||
+        isAssignedByEquals() || isSerial();
+  }
+
+  /**
+   * Answers whether evaluating this statement may change the result of any
+   * statement that follows it.
+   *
+   * @return {@code true} if all subsequent statements must be evaluated in
+   * order.
+   */
+  public boolean isBarrier() {
+    return BARRIER.matcher( mExpression ).find() || isSerial();
+  }
+
+  /**
+   * Answers whether this statement was marked for evaluation in order.
+   */
+  private boolean isSerial() {
+    return SERIAL.matcher( mExpression ).find();
+  }
+
+  /**
+   * Answers whether this statement assigns a value using {@code =} outside
+   * of any parentheses or brackets, where it cannot be a named argument.
+   * Braces start a new block of statements, even within parentheses.
+   * Comparisons, strings, and comments are skipped.
+   */
+  private boolean isAssignedByEquals() {
+    final var r = mExpression;
+    final int length = r.length();
+    final var blocks = new ArrayDeque<Integer>();
+    int depth = 0;
+
+    for( int i = 0; i < length; i++ ) {
+      final char ch = r.charAt( i );
+
+      switch( ch ) {
+        case '(':
+        case '[':
+          depth++;
+          break;
+        case ')':
+        case ']':
+          depth = Math.max( 0, depth - 1 );
+          break;
+        case '{':
+          blocks.push( depth );
+          depth = 0;
+          break;
+        case '}':
+          depth = blocks.isEmpty() ? 0 : blocks.pop();
+          break;
+        case '"':
+        case '\'':
+        case '`':
+          i = skipQuoted( r, i );
+          break;
+        case '#':
+          return false;
+        case '=':
+          if( i + 1 < length && r.charAt( i + 1 ) == '=' ) {
+            i++;
+          }
+          else if( depth == 0 &&
+              (i == 0 || "=!<>".indexOf( r.charAt( i - 1 ) ) < 0) ) {
+            return true;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the offset of the quote that closes the quoted text starting at
+   * the given offset, or the last offset if the quote is not closed.
+   */
+  private static int skipQuoted( final String r, int i ) {
+    final char quote = r.charAt( i );
+    final int length = r.length();
+
+    while( ++i < length && r.charAt( i ) != quote ) {
+      if( r.charAt( i ) == '\\' ) {
+        i++;
+      }
+    }
+
+    return Math.min( i, length - 1 );
+  }
+
+  /**
+   * Adds the names referred to by this statement to the given set. Rather
+   * than determining which names a stateful statement assigns, which R's
+   * replacement functions and string-based assignments make unreliable,
+   * every name it mentions is treated as possibly changed.
+   *
+   * @param names Receives the identifiers in this statement.
+   */
+  public void addReferences( final Set<String> names ) {
+    final var matcher = IDENTIFIER.matcher( mExpression );
+
+    while( matcher.find() ) {
+      names.add( matcher.group() );
+    }
+  }
+
+  /**
+   * Answers whether this statement refers to any of the given names.
+   *
+   * @param names The names to find.
+   * @return {@code true} if any name appears in this statement.
+   */
+  public boolean refersTo( final Set<String> names ) {
+    if( !names.isEmpty() ) {
+      final var matcher = IDENTIFIER.matcher( mExpression );
+
+      while( matcher.find() ) {
+        if( names.contains( matcher.group() ) ) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the definition keys that this statement reads from the R
+   * environment. Definitions replaced by their values before evaluation no
+   * longer appear in the statement, so these are the references that R
+   * resolves at run-time (e.g., against a list created by the bootstrap).
+   *
+   * @return Keys in definition form (e.g., {@code $tree.leaf$}).
+   */
+  public Set<String> getVariables() {
+    final var keys = new HashSet<String>();
+    final var matcher = VARIABLE.matcher( mExpression );
+
+    while( matcher.find() ) {
+      final var name = matcher.group( 1 ).substring( 1 ).replace( '$', '.' );
+      keys.add( '$' + name + '$' );
+    }
+
+    return keys;
+  }
+
+  public String getExpression() {
+    return mExpression;
+  }
+
+  public int getBegan() {
+    return mBegan;
+  }
+
+  public int getEnded() {
+    return mEnded;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.text;
+
+import java.util.BitSet;
+
+/**
+ * Replaces R variables, such as {@code v$tree$branch$leaf}. R variables have
+ * no closing sigil, so the longest defined name that ends on a word boundary
+ * is replaced. Names may contain any character that appears in the defined
+ * names (such as a hyphen), not only those that R allows.
+ * <p>
+ * The hash of each prefix of a candidate name is computed once, while
+ * scanning forward, so looking up every word boundary while walking back
+ * costs no more than the scan itself. The characters are collected once for
+ * each map given to the replacer, so a map must not change after it has
+ * been given; the R definitions are derived anew for every version of the
+ * definitions.
+ * </p>
+ */
+public class RSigilReplacer extends SigilReplacer {
+
+  private static final String SIGIL = "v$";
+  private static final int SIGIL_LENGTH = SIGIL.length();
+
+  /**
+   * The keys that determined {@link #mNameChars}.
+   */
+  private Keys mNames;
+
+  /**
+   * Characters, other than letters and digits, that occur in the names.
+   */
+  private final BitSet mNameChars = new BitSet();
+
+  /**
+   * Hash of each candidate name's prefix, indexed by the prefix length.
+   */
+  private int[] mHashes = new int[ 0 ];
+
+  /**
+   * Default (empty) constructor.
+   */
+  public RSigilReplacer() {
+  }
+
+  @Override
+  protected int scan(
+      final String text, final Keys keys, final StringBuilder sb ) {
+    collectNameChars( keys );
+
+    final int length = text.length();
+    final int longest = keys.getMaxLength();
+    final int[] hashes = mHashes;
+    int index = 0;
+    int began = text.indexOf( SIGIL );
+
+    while( began >= 0 ) {
+      int next = began + SIGIL_LENGTH;
+
+      // Variables must not begin in the middle of another name.
+      if( began == 0 || !isNameChar( text.charAt( began - 1 ) ) ) {
+        int ended = began;
+        int hash = 0;
+
+        // Only prefixes as long as the longest name need to be hashed.
+        while( ended < next || (ended < length &&
+            isDefinedChar( text.charAt( ended ) )) ) {
+          if( ended - began < longest ) {
+            hash = Keys.hash( hash, text.charAt( ended ) );
+            hashes[ ended - began + 1 ] = hash;
+          }
+
+          ended++;
+        }
+
+        next = ended;
+        ended = Math.min( ended, began + longest );
+
+        // Find the longest defined name that ends on a word boundary.
+        for( ; ended > began + SIGIL_LENGTH; ended-- ) {
+          if( ended < length && isWordChar( text.charAt( ended ) ) ) {
+            continue;
+          }
+
+          final var value =
+              keys.get( text, began, ended, hashes[ ended - began ] );
+
+          if( value != null ) {
+            sb.append( text, index, began ).append( value );
+            index = next = ended;
+            break;
+          }
+        }
+      }
+
+      began = text.indexOf( SIGIL, next );
+    }
+
+    return index;
+  }
+
+  /**
+   * Finds the characters used in the given names, unless they were found
+   * for the same names previously.
+   */
+  private void collectNameChars( final Keys keys ) {
+    if( keys != mNames ) {
+      mNames = keys;
+      mNameChars.clear();
+      mHashes = new int[ keys.getMaxLength() + 1 ];
+
+      for( final var name : keys.getNames() ) {
+        if( name == null ) {
+          continue;
+        }
+
+        for( int i = 0; i < name.length(); i++ ) {
+          final char ch = name.charAt( i );
+
+          if( !isWordChar( ch ) ) {
+            mNameChars.set( ch );
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Answers whether the given character may be part of a defined name.
+   */
+  private boolean isDefinedChar( final char ch ) {
+    return isWordChar( ch ) || mNameChars.get( ch );
+  }
+
+  /**
+   * Answers whether the given character may be part of an R variable name,
+   * including the {@code $} list accessor.
+   */
+  private static boolean isNameChar( final char ch ) {
+    return isWordChar( ch ) || ch == '$' || ch == '.' || ch == '_';
+  }
+
+  private static boolean isWordChar( final char ch ) {
+    return Character.isLetterOrDigit( ch );
+  }
+}
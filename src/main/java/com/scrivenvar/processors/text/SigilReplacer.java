@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.text;
+
+import com.scrivenvar.definition.ResolvedMap;
+
+import java.util.Map;
+
+/**
+ * Responsible for replacing variables that are bracketed by sigils. Rather
+ * than searching the text for every key in the map, the text is scanned once
+ * for sigils and each candidate variable name is looked up in the map. The
+ * cost is linear in the length of the text and independent of the number of
+ * definitions.
+ * <p>
+ * Candidate names are looked up in a hash table of the map's keys by
+ * comparing regions of the text, so nothing is allocated per candidate; the
+ * text between variables is copied once into a reusable buffer. Instances
+ * must not be shared across threads.
+ * </p>
+ */
+public abstract class SigilReplacer extends AbstractTextReplacer {
+
+  private final StringBuilder mBuffer = new StringBuilder( 1024 );
+
+  /**
+   * The map whose entries are in {@link #mKeys}, unless the map was a
+   * {@link ResolvedMap}, which retains its own table.
+   */
+  private Map<String, String> mMap;
+  private Keys mKeys;
+
+  /**
+   * Default (empty) constructor.
+   */
+  protected SigilReplacer() {
+  }
+
+  @Override
+  public String replace( final String text, final Map<String, String> map ) {
+    final var sb = getBuffer();
+    sb.setLength( 0 );
+
+    final int index = scan( text, getKeys( map ), sb );
+
+    // Avoid copying the text when there were no variables to replace.
+    if( index == 0 ) {
+      return text;
+    }
+
+    return sb.append( text, index, text.length() ).toString();
+  }
+
+  /**
+   * Scans the text for variables, appending the text up to and including
+   * each variable's value to the given buffer.
+   *
+   * @param text The text containing zero or more variables to replace.
+   * @param keys The variables mapped to their dereferenced values.
+   * @param sb   The buffer to receive the replaced text.
+   * @return The offset into the text following the last replaced variable,
+   * which is {@code 0} if no variables were replaced.
+   */
+  protected abstract int scan( String text, Keys keys, StringBuilder sb );
+
+  /**
+   * Returns a table of the given map's entries. Definitions are tabulated
+   * once per version; any other map must not change after it has been
+   * given to this replacer.
+   */
+  private Keys getKeys( final Map<String, String> map ) {
+    if( map instanceof ResolvedMap ) {
+      return ((ResolvedMap) map).derive( Keys.class, Keys::new );
+    }
+
+    if( map != mMap ) {
+      mMap = map;
+      mKeys = new Keys( map );
+    }
+
+    return mKeys;
+  }
+
+  private StringBuilder getBuffer() {
+    return mBuffer;
+  }
+
+  /**
+   * An immutable, open-addressed hash table of variable names to values,
+   * which finds names that occur within a larger text without copying them.
+   * Names are hashed the same way as {@link String#hashCode()}.
+   */
+  protected static final class Keys {
+    private final String[] mNames;
+    private final String[] mValues;
+    private final int[] mHashes;
+    private final int mMask;
+    private final int mMaxLength;
+
+    private Keys( final Map<String, String> map ) {
+      int capacity = 2;
+
+      while( capacity < map.size() * 2 ) {
+        capacity <<= 1;
+      }
+
+      mNames = new String[ capacity ];
+      mValues = new String[ capacity ];
+      mHashes = new int[ capacity ];
+      mMask = capacity - 1;
+
+      int maxLength = 0;
+
+      for( final var entry : map.entrySet() ) {
+        final var name = entry.getKey();
+        final int hash = name.hashCode();
+        int slot = spread( hash ) & mMask;
+
+        while( mNames[ slot ] != null ) {
+          slot = (slot + 1) & mMask;
+        }
+
+        mNames[ slot ] = name;
+        mValues[ slot ] = entry.getValue();
+        mHashes[ slot ] = hash;
+        maxLength = Math.max( maxLength, name.length() );
+      }
+
+      mMaxLength = maxLength;
+    }
+
+    /**
+     * Returns the value for the variable name found in the given text
+     * region.
+     *
+     * @param text  The text containing a candidate variable name.
+     * @param began Offset of the first character of the candidate name.
+     * @param ended Offset following the last character of the candidate.
+     * @return The variable's value, or {@code null} if not defined.
+     */
+    public String get( final String text, final int began, final int ended ) {
+      int hash = 0;
+
+      for( int i = began; i < ended; i++ ) {
+        hash = hash( hash, text.charAt( i ) );
+      }
+
+      return get( text, began, ended, hash );
+    }
+
+    /**
+     * Returns the value for the variable name found in the given text
+     * region, whose hash was computed using {@link #hash(int, char)}.
+     *
+     * @param text  The text containing a candidate variable name.
+     * @param began Offset of the first character of the candidate name.
+     * @param ended Offset following the last character of the candidate.
+     * @param hash  The hash of the candidate name.
+     * @return The variable's value, or {@code null} if not defined.
+     */
+    public String get(
+        final String text, final int began, final int ended,
+        final int hash ) {
+      final int length = ended - began;
+      int slot = spread( hash ) & mMask;
+      String name;
+
+      while( (name = mNames[ slot ]) != null ) {
+        if( mHashes[ slot ] == hash && name.length() == length &&
+            text.regionMatches( began, name, 0, length ) ) {
+          return mValues[ slot ];
+        }
+
+        slot = (slot + 1) & mMask;
+      }
+
+      return null;
+    }
+
+    /**
+     * Returns the length of the longest variable name.
+     *
+     * @return The number of characters in the longest name.
+     */
+    public int getMaxLength() {
+      return mMaxLength;
+    }
+
+    /**
+     * Returns the names of the variables, in no particular order, with
+     * {@code null} for unused slots.
+     *
+     * @return The variable names, which must not be modified.
+     */
+    String[] getNames() {
+      return mNames;
+    }
+
+    /**
+     * Extends a hash by one character, the same way as
+     * {@link String#hashCode()}.
+     *
+     * @param hash The hash of the preceding characters.
+     * @param ch   The character to include.
+     * @return The hash of the preceding characters followed by the given
+     * character.
+     */
+    public static int hash( final int hash, final char ch ) {
+      return 31 * hash + ch;
+    }
+
+    private static int spread( final int hash ) {
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.processors.text;
+
+/**
+ * Replaces variables that are bracketed by dollar symbols, such as
+ * {@code $tree.branch.leaf$}.
+ */
+public class YamlSigilReplacer extends SigilReplacer {
+
+  private static final char SIGIL = '$';
+
+  /**
+   * Default (empty) constructor.
+   */
+  public YamlSigilReplacer() {
+  }
+
+  @Override
+  protected int scan(
+      final String text, final Keys keys, final StringBuilder sb ) {
+    int index = 0;
+    int began = text.indexOf( SIGIL );
+
+    while( began >= 0 ) {
+      final int ended = text.indexOf( SIGIL, began + 1 );
+
+      if( ended < 0 ) {
+        break;
+      }
+
+      final var value = keys.get( text, began, ended + 1 );
+
+      if( value == null ) {
+        // The closing sigil may open the next variable.
+        began = ended;
+      }
+      else {
+        sb.append( text, index, began ).append( value );
+        index = ended + 1;
+        began = text.indexOf( SIGIL, index );
+      }
+    }
+
+    return index;
+  }
+}
@@ -28,11 +28,19 @@
 package com.scrivenvar.spelling.api;
 
 import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 /**
  * Defines the responsibilities for a spell checking API. The intention is
  * to allow different spell checking implementations to be used by the
  * application, such as SymSpell and LinSpell.
+ * <p>
+ * Implementations must be safe to call from multiple threads at once:
+ * any state needed to tokenize text must be held per call or per thread.
+ * Listeners are called on the thread that is proofreading the text, so a
+ * listener must not proofread from within its callback.
+ * </p>
  */
 public interface SpellChecker {
 
@@ -65,4 +73,21 @@ public interface SpellChecker {
    *                 and ending offset into the text where said word is found.
    */
   void proofread( String text, SpellCheckListener consumer );
+
+  /**
+   * Proofreads each of the given texts, in parallel. The listener for a
+   * given text is only called from the thread that proofreads that text, in
+   * the same order as {@link #proofread(String, SpellCheckListener)} would
+   * call it; listeners for different texts may be called concurrently.
+   *
+   * @param texts     The texts to check for words missing from the lexicon.
+   * @param consumers Provides the listener for the text at a given index.
+   */
+  default void proofread(
+      final List<String> texts,
+      final IntFunction<SpellCheckListener> consumers ) {
+    IntStream.range( 0, texts.size() )
+             .parallel()
+             .forEach( i -> proofread( texts.get( i ), consumers.apply( i ) ) );
+  }
 }
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.spelling.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Responsible for reading a lexicon from a compact binary index. The index
+ * is created from a tab-separated lexicon of words and frequencies the first
+ * time the lexicon is opened, then memory-mapped on subsequent launches so
+ * that no parsing, boxing, or hashing takes place at startup.
+ * <p>
+ * The index begins with a header that identifies the format version and
+ * the size and time stamp of the lexicon it was created from; an index that
+ * does not match is created again. The header is followed by a table of
+ * offsets to each word, a table of word frequencies, an open-addressing hash
+ * table of word indexes, and the UTF-8 bytes of every word, sorted in
+ * unsigned byte order. The hash table answers membership queries with,
+ * usually, a single probe.
+ * </p>
+ * <p>
+ * Instances are immutable and may be read from multiple threads.
+ * </p>
+ */
+public final class LexiconIndex {
+  /**
+   * Identifies index files; the bytes spell "SVLX".
+   */
+  private static final int MAGIC = 0x53564C58;
+
+  /**
+   * Changing the index layout requires changing this version.
+   */
+  private static final int VERSION = 2;
+
+  private static final int HEADER_BYTES = 32;
+
+  /**
+   * Each hash table slot holds a word's {@link String#hashCode()} and the
+   * word's index plus one, so that zero marks an empty slot.
+   */
+  private static final int SLOT_BYTES = 2 * Integer.BYTES;
+
+  private static final String DELIMITER = "\t";
+
+  private final ByteBuffer mBuffer;
+  private final int mSize;
+  private final int mSlots;
+  private final int mCountsOffset;
+  private final int mTableOffset;
+  private final int mWordsOffset;
+
+  private LexiconIndex( final ByteBuffer buffer ) {
+    mBuffer = buffer;
+    mSize = buffer.getInt( 24 );
+    mSlots = buffer.getInt( 28 );
+    mCountsOffset = HEADER_BYTES + (mSize + 1) * Integer.BYTES;
+    mTableOffset = mCountsOffset + mSize * Long.BYTES;
+    mWordsOffset = mTableOffset + mSlots * SLOT_BYTES;
+  }
+
+  /**
+   * Opens the index for the given lexicon, creating the index if it does not
+   * exist or was created from a different lexicon. When the index cannot be
+   * written, it is kept in memory instead.
+   *
+   * @param lexicon Tab-separated lexicon of words and frequencies.
+   * @param index   Path to the index file.
+   * @return The index for the lexicon.
+   * @throws IOException The lexicon could not be read.
+   */
+  public static LexiconIndex open( final URL lexicon, final Path index )
+      throws IOException {
+    final var connection = lexicon.openConnection();
+    final long length;
+    final long modified;
+
+    // Reading the metadata may open the lexicon, so close it afterwards.
+    try( final var ignored = connection.getInputStream() ) {
+      length = connection.getContentLengthLong();
+      modified = connection.getLastModified();
+    }
+
+    final var mapped = map( index );
+
+    if( mapped != null && isIndexOf( mapped, length, modified ) ) {
+      return new LexiconIndex( mapped );
+    }
+
+    final var buffer = build( lexicon, length, modified );
+
+    try {
+      write( index, buffer );
+
+      final var written = map( index );
+
+      if( written != null ) {
+        return new LexiconIndex( written );
+      }
+    } catch( final IOException ignored ) {
+      // Use the index from memory; it will be written next time.
+    }
+
+    return new LexiconIndex( buffer );
+  }
+
+  /**
+   * Answers whether the given word is in the lexicon. The comparison is
+   * case-sensitive.
+   *
+   * @param word The word to find.
+   * @return {@code true} if the lexicon contains the word.
+   */
+  public boolean contains( final String word ) {
+    final var buffer = mBuffer;
+    final int hash = word.hashCode();
+    final int mask = mSlots - 1;
+
+    for( int slot = spread( hash ) & mask; ; slot = (slot + 1) & mask ) {
+      final int offset = mTableOffset + slot * SLOT_BYTES;
+      final int entry = buffer.getInt( offset + Integer.BYTES );
+
+      if( entry == 0 ) {
+        return false;
+      }
+
+      if( buffer.getInt( offset ) == hash && matches( entry - 1, word ) ) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of words in the lexicon.
+   *
+   * @return The number of distinct words.
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Returns the word at the given index, in unsigned byte order.
+   *
+   * @param index The index of the word, less than {@link #size()}.
+   * @return The word at the given index.
+   */
+  public String getWord( final int index ) {
+    final int began = getOffset( index );
+    final var bytes = new byte[ getOffset( index + 1 ) - began ];
+    mBuffer.duplicate().position( mWordsOffset + began ).get( bytes );
+    return new String( bytes, UTF_8 );
+  }
+
+  /**
+   * Returns the frequency of the word at the given index.
+   *
+   * @param index The index of the word, less than {@link #size()}.
+   * @return The number of occurrences recorded in the lexicon.
+   */
+  public long getCount( final int index ) {
+    return mBuffer.getLong( mCountsOffset + index * Long.BYTES );
+  }
+
+  /**
+   * Returns the lexicon as tab-separated words and frequencies, which is the
+   * format that the lexicon was read from.
+   *
+   * @return A view of the lexicon's lines.
+   */
+  public List<String> toLexicon() {
+    return new AbstractList<>() {
+      @Override
+      public String get( final int index ) {
+        return getWord( index ) + DELIMITER + getCount( index );
+      }
+
+      @Override
+      public int size() {
+        return mSize;
+      }
+    };
+  }
+
+  /**
+   * Answers whether the word at the given index equals the given word,
+   * without encoding the given word unless it has non-ASCII characters.
+   */
+  private boolean matches( final int index, final String word ) {
+    final var buffer = mBuffer;
+    final int began = mWordsOffset + getOffset( index );
+    final int length = mWordsOffset + getOffset( index + 1 ) - began;
+    final int chars = word.length();
+
+    for( int i = 0; i < chars; i++ ) {
+      final char c = word.charAt( i );
+
+      if( c >= 0x80 ) {
+        return compare( index, word.getBytes( UTF_8 ) ) == 0;
+      }
+
+      if( i >= length || buffer.get( began + i ) != c ) {
+        return false;
+      }
+    }
+
+    return length == chars;
+  }
+
+  /**
+   * Compares the word at the given index with the given bytes.
+   */
+  private int compare( final int index, final byte[] bytes ) {
+    final var buffer = mBuffer;
+    final int began = mWordsOffset + getOffset( index );
+    final int length = mWordsOffset + getOffset( index + 1 ) - began;
+    final int shortest = Math.min( length, bytes.length );
+
+    for( int i = 0; i < shortest; i++ ) {
+      final int cmp =
+          Byte.compareUnsigned( buffer.get( began + i ), bytes[ i ] );
+
+      if( cmp != 0 ) {
+        return cmp;
+      }
+    }
+
+    return length - bytes.length;
+  }
+
+  /**
+   * Mixes the high bits of the given hash code into the low bits, which
+   * select the hash table slot.
+   */
+  private static int spread( final int hash ) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private int getOffset( final int index ) {
+    return mBuffer.getInt( HEADER_BYTES + index * Integer.BYTES );
+  }
+
+  private static boolean isIndexOf(
+      final ByteBuffer buffer, final long length, final long modified ) {
+    if( buffer.capacity() < HEADER_BYTES ||
+        buffer.getInt( 0 ) != MAGIC ||
+        buffer.getInt( 4 ) != VERSION ||
+        buffer.getLong( 8 ) != length ||
+        buffer.getLong( 16 ) != modified ) {
+      return false;
+    }
+
+    // Guard against truncated files.
+    final long size = buffer.getInt( 24 );
+    final long slots = buffer.getInt( 28 );
+    final long counts = HEADER_BYTES + (size + 1) * Integer.BYTES;
+    final long words = counts + size * Long.BYTES + slots * SLOT_BYTES;
+
+    return size >= 0 && slots > size && Long.bitCount( slots ) == 1 &&
+        words <= buffer.capacity() &&
+        words + buffer.getInt( (int) counts - Integer.BYTES ) ==
+            buffer.capacity();
+  }
+
+  /**
+   * Reads the given lexicon into a new index.
+   */
+  private static ByteBuffer build(
+      final URL lexicon, final long length, final long modified )
+      throws IOException {
+    final var counts = new HashMap<String, Long>( 1 << 17 );
+
+    try( final var reader = new BufferedReader(
+        new InputStreamReader( lexicon.openStream(), UTF_8 ) ) ) {
+      String line;
+
+      while( (line = reader.readLine()) != null ) {
+        final var parts = line.split( DELIMITER );
+
+        if( !parts[ 0 ].isEmpty() ) {
+          counts.merge( parts[ 0 ], parseCount( parts ), Long::sum );
+        }
+      }
+    }
+
+    final var words = new ArrayList<byte[]>( counts.size() );
+    int bytes = 0;
+
+    for( final var word : counts.keySet() ) {
+      final var encoded = word.getBytes( UTF_8 );
+      words.add( encoded );
+      bytes += encoded.length;
+    }
+
+    words.sort( Arrays::compareUnsigned );
+
+    final int size = words.size();
+    int slots = 2;
+
+    // Keeping the table at most half full keeps probe sequences short.
+    while( slots < size * 2 ) {
+      slots <<= 1;
+    }
+
+    final var buffer = ByteBuffer.allocate(
+        HEADER_BYTES + (size + 1) * Integer.BYTES + size * Long.BYTES +
+            slots * SLOT_BYTES + bytes );
+
+    buffer.putInt( MAGIC )
+          .putInt( VERSION )
+          .putLong( length )
+          .putLong( modified )
+          .putInt( size )
+          .putInt( slots );
+
+    int offset = 0;
+
+    for( final var word : words ) {
+      buffer.putInt( offset );
+      offset += word.length;
+    }
+
+    buffer.putInt( offset );
+
+    final int table = buffer.position() + size * Long.BYTES;
+    final int mask = slots - 1;
+
+    for( int i = 0; i < size; i++ ) {
+      final var word = new String( words.get( i ), UTF_8 );
+      final int hash = word.hashCode();
+      int slot = spread( hash ) & mask;
+
+      while( buffer.getInt( table + slot * SLOT_BYTES + Integer.BYTES ) != 0 ) {
+        slot = (slot + 1) & mask;
+      }
+
+      buffer.putInt( table + slot * SLOT_BYTES, hash );
+      buffer.putInt( table + slot * SLOT_BYTES + Integer.BYTES, i + 1 );
+      buffer.putLong( counts.get( word ) );
+    }
+
+    buffer.position( table + slots * SLOT_BYTES );
+
+    for( final var word : words ) {
+      buffer.put( word );
+    }
+
+    return buffer.flip();
+  }
+
+  private static long parseCount( final String[] parts ) {
+    try {
+      return parts.length > 1 ? Long.parseLong( parts[ 1 ].trim() ) : 1;
+    } catch( final NumberFormatException ex ) {
+      return 1;
+    }
+  }
+
+  /**
+   * Writes the given index to a temporary file that is then moved into
+   * place, so that concurrent readers never see a partial file.
+   */
+  private static void write( final Path index, final ByteBuffer buffer )
+      throws IOException {
+    final var directory = index.toAbsolutePath().getParent();
+    Files.createDirectories( directory );
+
+    final var temp = Files.createTempFile( directory, "lex", ".tmp" );
+
+    try {
+      try( final var channel = FileChannel.open(
+          temp, WRITE ) ) {
+        final var data = buffer.duplicate();
+
+        while( data.hasRemaining() ) {
+          channel.write( data );
+        }
+      }
+
+      Files.move( temp, index, ATOMIC_MOVE, REPLACE_EXISTING );
+    } finally {
+      Files.deleteIfExists( temp );
+    }
+  }
+
+  /**
+   * Maps the given index file into memory.
+   *
+   * @return The index contents, or {@code null} if the file cannot be read.
+   */
+  private static ByteBuffer map( final Path index ) {
+    if( Files.isRegularFile( index ) ) {
+      try( final var channel = FileChannel.open( index, READ ) ) {
+        return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+      } catch( final IOException ignored ) {
+        // Create the index again.
+      }
+    }
+
+    return null;
+  }
+}
@@ -35,38 +35,47 @@ import io.gitlab.rxp90.jsymspell.SymSpellBuilder;
 
 import java.text.BreakIterator;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static io.gitlab.rxp90.jsymspell.SymSpell.Verbosity;
 import static io.gitlab.rxp90.jsymspell.SymSpell.Verbosity.ALL;
-import static io.gitlab.rxp90.jsymspell.SymSpell.Verbosity.CLOSEST;
 import static java.lang.Character.isLetter;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 /**
- * Responsible for spell checking using {@link SymSpell}.
+ * Responsible for spell checking using {@link SymSpell}. Words are checked
+ * against a {@link LexiconIndex}; the {@link SymSpell} deletes index, which
+ * is only needed for suggestions and is expensive to build, is built in the
+ * background once the lexicon is open.
  */
 public class SymSpellSpeller implements SpellChecker {
-  private final BreakIterator mBreakIterator = BreakIterator.getWordInstance();
+  /**
+   * Break iterators are stateful, so each thread needs its own instance to
+   * allow proofreading from multiple threads.
+   */
+  private static final ThreadLocal<BreakIterator> sBreakIterator =
+      ThreadLocal.withInitial( BreakIterator::getWordInstance );
+
+  private final LexiconIndex mLexicon;
 
-  private final SymSpell mSymSpell;
+  /**
+   * Built from the lexicon in the background, so that the first request for
+   * suggestions (on the JavaFX thread) need not build it.
+   */
+  private final CompletableFuture<SymSpell> mSymSpell;
 
   /**
-   * Creates a new lexicon for the given collection of lexemes.
+   * Creates a new spell checker for the given lexicon.
    *
-   * @param lexiconWords The words in the lexicon to add for spell checking,
-   *                     must not be empty.
+   * @param lexicon The words to use for spell checking, must not be empty.
    * @return An instance of {@link SpellChecker} that can check if a word
    * is correct and suggest alternatives.
    */
-  public static SpellChecker forLexicon(
-      final Collection<String> lexiconWords ) {
-    assert lexiconWords != null && !lexiconWords.isEmpty();
+  public static SpellChecker forLexicon( final LexiconIndex lexicon ) {
+    assert lexicon != null && lexicon.size() > 0;
 
-    final SymSpellBuilder builder = new SymSpellBuilder()
-        .setLexiconWords( lexiconWords );
-
-    return new SymSpellSpeller( builder.build() );
+    return new SymSpellSpeller( lexicon );
   }
 
   /**
@@ -74,15 +83,19 @@ public class SymSpellSpeller implements SpellChecker {
    * interface
    * is available.
    *
-   * @param symSpell The implementation-specific spell checker.
+   * @param lexicon The words to use for spell checking.
    */
-  private SymSpellSpeller( final SymSpell symSpell ) {
-    mSymSpell = symSpell;
+  private SymSpellSpeller( final LexiconIndex lexicon ) {
+    mLexicon = lexicon;
+    mSymSpell = supplyAsync(
+        () -> new SymSpellBuilder()
+            .setLexiconWords( lexicon.toLexicon() )
+            .build() );
   }
 
   @Override
   public boolean inLexicon( final String lexeme ) {
-    return lookup( lexeme, CLOSEST ).size() == 1;
+    return getLexicon().contains( lexeme.toLowerCase() );
   }
 
   @Override
@@ -107,9 +120,10 @@ public class SymSpellSpeller implements SpellChecker {
     assert text != null;
     assert consumer != null;
 
-    mBreakIterator.setText( text );
+    final var iterator = sBreakIterator.get();
+    iterator.setText( text );
 
-    int boundaryIndex = mBreakIterator.first();
+    int boundaryIndex = iterator.first();
     int previousIndex = 0;
 
     while( boundaryIndex != BreakIterator.DONE ) {
@@ -125,7 +139,7 @@ public class SymSpellSpeller implements SpellChecker {
       }
 
       previousIndex = boundaryIndex;
-      boundaryIndex = mBreakIterator.next();
+      boundaryIndex = iterator.next();
     }
   }
 
@@ -152,7 +166,15 @@ public class SymSpellSpeller implements SpellChecker {
     return getSpeller().lookup( lexeme, v );
   }
 
+  /**
+   * Returns the deletes index, waiting for it to be built if suggestions
+   * are requested immediately after the lexicon was opened.
+   */
   private SymSpell getSpeller() {
-    return mSymSpell;
+    return mSymSpell.join();
+  }
+
+  private LexiconIndex getLexicon() {
+    return mLexicon;
   }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.definition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DependencyInterpolatorTest {
+
+  private final static String AUTHOR_FIRST = "FirstName";
+  private final static String AUTHOR_LAST = "LastName";
+
+  /**
+   * Test that definitions referring back to themselves are reported as cycles
+   * without exhausting the stack, and that changing a definition updates the
+   * definitions that depend on it.
+   */
+  @Test
+  public void test_Update_CyclicReferences_CyclesReported() {
+    final var map = new HashMap<String, String>();
+    map.put( "$a$", "$b$" );
+    map.put( "$b$", "$a$" );
+    map.put( "$c$", "$c$!" );
+    map.put( "$d$", AUTHOR_FIRST );
+    map.put( "$e$", "$d$ $d$" );
+
+    final var interpolator = new DependencyInterpolator();
+    interpolator.update( map );
+
+    assertEquals( Set.of( "$a$", "$b$", "$c$" ), interpolator.getCycles() );
+    assertEquals( "$c$!", interpolator.getResolved().get( "$c$" ) );
+
+    final var changed = interpolator.put( "$d$", AUTHOR_LAST );
+    assertEquals( Set.of( "$d$", "$e$" ), changed );
+
+    final var expected = AUTHOR_LAST + ' ' + AUTHOR_LAST;
+    assertEquals( expected, interpolator.getResolved().get( "$e$" ) );
+  }
+
+  /**
+   * Test that changing a single definition resolves only that definition and
+   * those that depend on it, leaving unrelated definitions as they were.
+   */
+  @Test
+  public void test_Put_SingleKeyChanged_DependentsResolved() {
+    final var interpolator = new DependencyInterpolator();
+    interpolator.update( Map.of(
+        "$name.first$", AUTHOR_FIRST,
+        "$name.last$", AUTHOR_LAST,
+        "$name.full$", "$name.first$ $name.last$",
+        "$title$", "By $name.full$",
+        "$year$", "2020"
+    ) );
+
+    final var unrelated = interpolator.getResolved().get( "$year$" );
+    final var changed = interpolator.put( "$name.first$", "Given" );
+
+    assertEquals(
+        Set.of( "$name.first$", "$name.full$", "$title$" ), changed );
+    final var title = interpolator.getResolved().get( "$title$" );
+    assertEquals( "By Given " + AUTHOR_LAST, title );
+    assertSame( unrelated, interpolator.getResolved().get( "$year$" ) );
+
+    // A value that resolves to the same text changes nothing downstream.
+    assertEquals( Set.of(), interpolator.put( "$name.first$", "Given" ) );
+  }
+
+  /**
+   * Test that removing a definition leaves references to it verbatim, and
+   * that redefining it resolves its dependents again, including when the
+   * new definition completes a cycle.
+   */
+  @Test
+  public void test_Apply_KeyRemovedAndRedefined_DependentsResolved() {
+    final var interpolator = new DependencyInterpolator();
+    interpolator.update( Map.of(
+        "$a$", AUTHOR_FIRST,
+        "$b$", "$a$!",
+        "$c$", "[$b$]"
+    ) );
+
+    final var changes = new HashMap<String, String>();
+    changes.put( "$a$", null );
+
+    assertEquals(
+        Set.of( "$a$", "$b$", "$c$" ), interpolator.apply( changes ) );
+    assertEquals( "[$a$!]", interpolator.getResolved().get( "$c$" ) );
+
+    interpolator.put( "$a$", "$c$" );
+    assertEquals( Set.of( "$a$", "$b$", "$c$" ), interpolator.getCycles() );
+
+    interpolator.put( "$a$", AUTHOR_LAST );
+    assertEquals( Set.of(), interpolator.getCycles() );
+    assertEquals(
+        "[" + AUTHOR_LAST + "!]", interpolator.getResolved().get( "$c$" ) );
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  o Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  o Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.scrivenvar.spelling.impl;
+
+import com.scrivenvar.spelling.api.SpellChecker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SymSpellSpellerTest {
+
+  private final static int PARAGRAPHS = 500;
+  private final static int WORDS_PER_PARAGRAPH = 60;
+
+  @TempDir
+  Path mTempDir;
+
+  /**
+   * Test that words in the lexicon are found regardless of case, and that
+   * misspelled words are reported with offsets into the text.
+   */
+  @Test
+  public void test_Proofread_MisspelledWords_OffsetsReported()
+      throws Exception {
+    final var checker = createSpellChecker();
+
+    assertTrue( checker.inLexicon( "the" ) );
+    assertTrue( checker.inLexicon( "The" ) );
+    assertFalse( checker.inLexicon( "qzxv" ) );
+
+    final var misspelled = new ArrayList<String>();
+    checker.proofread(
+        "The qzxv jumped over the wrold's fence.",
+        ( lexeme, began, ended ) -> misspelled.add(
+            format( "%s:%d:%d", lexeme, began, ended ) ) );
+
+    assertEquals( List.of( "qzxv:4:8", "wrold's:25:32" ), misspelled );
+  }
+
+  /**
+   * Test that a spell checker shared by many threads reports the same
+   * misspelled words as proofreading each text in turn.
+   */
+  @Test
+  public void test_Proofread_ConcurrentBatch_SameAsSequential()
+      throws Exception {
+    final var checker = createSpellChecker();
+    final var corpus = createCorpus( checker );
+    final var expected = new ArrayList<List<Integer>>( corpus.size() );
+
+    for( final var text : corpus ) {
+      final var offsets = new ArrayList<Integer>();
+      checker.proofread(
+          text, ( lexeme, began, ended ) -> offsets.add( began ) );
+      expected.add( offsets );
+    }
+
+    final var actual = new ArrayList<List<Integer>>( corpus.size() );
+
+    for( int i = 0; i < corpus.size(); i++ ) {
+      actual.add( new ArrayList<>() );
+    }
+
+    checker.proofread(
+        corpus, i -> ( lexeme, began, ended ) -> actual.get( i ).add( began ) );
+
+    assertEquals( expected, actual );
+  }
+
+  /**
+   * Creates paragraphs of words from the lexicon, with a few misspelled
+   * words in each paragraph.
+   */
+  private List<String> createCorpus( final SpellChecker checker ) {
+    final var lexicon = createLexicon().toLexicon();
+    final var random = new Random( 2020 );
+    final var corpus = new ArrayList<String>( PARAGRAPHS );
+
+    for( int i = 0; i < PARAGRAPHS; i++ ) {
+      final var paragraph = new StringBuilder( WORDS_PER_PARAGRAPH * 8 );
+
+      for( int j = 0; j < WORDS_PER_PARAGRAPH; j++ ) {
+        final var line = lexicon.get( random.nextInt( lexicon.size() ) );
+        var word = line.substring( 0, line.indexOf( '\t' ) );
+
+        if( random.nextInt( 20 ) == 0 ) {
+          word = word + "qx";
+        }
+
+        paragraph.append( word ).append( j % 12 == 11 ? ". " : " " );
+      }
+
+      corpus.add( paragraph.toString() );
+    }
+
+    assertTrue( checker.inLexicon( lexicon.get( 0 ).split( "\t" )[ 0 ] ) );
+
+    return corpus;
+  }
+
+  private SpellChecker createSpellChecker() {
+    return SymSpellSpeller.forLexicon( createLexicon() );
+  }
+
+  private LexiconIndex createLexicon() {
+    try {
+      final var lexicon = getClass().getResource( "/lexicons/en.txt" );
+      return LexiconIndex.open( lexicon, mTempDir.resolve( "en.txt.idx" ) );
+    } catch( final Exception ex ) {
+      throw new IllegalStateException( ex );
+    }
+  }
+}